@@ -0,0 +1,3 @@
+# Benchmark builds are shrunk like release but keep their names,
+# so traces and generated Baseline Profiles refer to the real classes.
+-dontobfuscate
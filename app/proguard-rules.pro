@@ -0,0 +1,8 @@
+# Project specific ProGuard rules for the release build.
+# Activities, services and receivers are kept through the manifest; the hidden
+# ConnectivityManager method used for the mobile data check is a framework class
+# and needs no rule.
+
+# Keep line numbers readable in crash reports
+-keepattributes SourceFile,LineNumberTable
+-renamesourcefileattribute SourceFile
@@ -0,0 +1,41 @@
+package com.example.grannyaid;
+
+public class AirplaneModeHandler implements SettingHandler {
+    private final DeviceController deviceController;
+
+    public AirplaneModeHandler(DeviceController deviceController) {
+        this.deviceController = deviceController;
+    }
+
+    @Override
+    public Setting getSetting() {
+        return Setting.AIRPLANE_MODE;
+    }
+
+    @Override
+    public boolean probe(SettingsManager.Profile profile, DeviceStateSnapshot snapshot) {
+        return profile.getAirplaneMode() != snapshot.isAirplaneModeEnabled();
+    }
+
+    @Override
+    public boolean isAutomatic() {
+        // Apps can't switch airplane mode, the user is guided to Settings. Not even with
+        // WRITE_SECURE_SETTINGS: the radios follow a broadcast that only the system may send
+        return false;
+    }
+
+    @Override
+    public boolean apply(SettingsManager.Profile profile) {
+        return deviceController.setAirplaneMode(profile.getAirplaneMode());
+    }
+
+    @Override
+    public boolean verify(SettingsManager.Profile profile) {
+        return deviceController.isAirplaneModeEnabled() == profile.getAirplaneMode();
+    }
+
+    @Override
+    public int getGuidedInstruction(SettingsManager.Profile profile) {
+        return profile.getAirplaneMode() ? R.string.guided_step_airplane_enable : R.string.guided_step_airplane_disable;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.grannyaid;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.concurrent.CompletableFuture;
+
+public class BluetoothHandler implements SettingHandler {
+    private static final String TAG = "BluetoothHandler";
+
+    private final Context context;
+    private final DeviceController deviceController;
+
+    public BluetoothHandler(Context context, DeviceController deviceController) {
+        this.context = context;
+        this.deviceController = deviceController;
+    }
+
+    @Override
+    public Setting getSetting() {
+        return Setting.BLUETOOTH;
+    }
+
+    @Override
+    public boolean probe(SettingsManager.Profile profile, DeviceStateSnapshot snapshot) {
+        return profile.getBluetooth() != snapshot.isBluetoothEnabled();
+    }
+
+    @Override
+    public boolean isAutomatic() {
+        return true;
+    }
+
+    @Override
+    public boolean apply(SettingsManager.Profile profile) {
+        // Process Bluetooth fix only if permissions allow
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S &&
+                context.checkSelfPermission(Manifest.permission.BLUETOOTH_CONNECT)
+                        != PackageManager.PERMISSION_GRANTED) {
+            Log.w(TAG, "No BLUETOOTH_CONNECT permission, can't change Bluetooth");
+            return false;
+        }
+        return deviceController.setBluetooth(profile.getBluetooth());
+    }
+
+    @Override
+    public CompletableFuture<Boolean> confirm(SettingsManager.Profile profile) {
+        // BluetoothAdapter.enable() only means the request was accepted, wait for the state broadcast
+        return deviceController.confirmState(Setting.BLUETOOTH, profile.getBluetooth());
+    }
+
+    @Override
+    public boolean verify(SettingsManager.Profile profile) {
+        return deviceController.isBluetoothEnabled() == profile.getBluetooth();
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.grannyaid;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Re-arms the background watchdog after a reboot or an app update, since content trigger jobs don't survive them
+ */
+public class BootReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (Intent.ACTION_BOOT_COMPLETED.equals(action) || Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+            DriftWatchdog.arm(context);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.grannyaid;
+
+import android.Manifest;
+import android.app.admin.DevicePolicyManager;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.provider.Settings;
+import android.util.Log;
+
+/**
+ * What this installation is allowed to change without the user, worked out once at startup.
+ * Until detection has finished every capability reads as missing, so callers simply take
+ * the unprivileged path; the getters never block and never make a binder call.
+ *
+ * As Device Owner the app may switch Wi-Fi and Bluetooth itself on every Android version.
+ * DevicePolicyManager.setGlobalSetting() only accepts a documented allow-list of keys, and on
+ * no Android version this app supports does it include airplane mode or mobile data, so
+ * Device Owner alone never makes them writable. Detection only reads, it never writes a setting.
+ *
+ * WRITE_SECURE_SETTINGS, granted over adb with
+ * pm grant com.example.grannyaid android.permission.WRITE_SECURE_SETTINGS,
+ * lets the app write the mobile data key itself. Without the grant nothing changes.
+ * Airplane mode stays guided even then: the radios only follow ACTION_AIRPLANE_MODE_CHANGED,
+ * a protected broadcast since Android 4.2, and a write on its own would only make
+ * Bluetooth and other watchers of the key drop out.
+ * A key whose write turns out not to work is switched off until the next detect().
+ */
+public final class DeviceCapabilities {
+    private static final String TAG = "DeviceCapabilities";
+
+    // Not in Settings.Global's public API, the key used by the platform for the data switch
+    static final String GLOBAL_MOBILE_DATA = "mobile_data";
+
+    private static DeviceCapabilities instance;
+
+    private final Context context;
+
+    private volatile boolean detected = false;
+    private volatile boolean deviceOwner = false;
+    private volatile boolean secureSettingsGranted = false;
+    private volatile boolean mobileDataWritable = false;
+
+    public static synchronized DeviceCapabilities getInstance(Context context) {
+        if (instance == null) {
+            instance = new DeviceCapabilities(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DeviceCapabilities(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Work out the capabilities again, e.g. after the app became Device Owner.
+     * Makes binder calls, call it off the main thread.
+     */
+    public synchronized void detect() {
+        DeviceIo.noteDeviceCall("detect capabilities");
+        boolean owner = false;
+        boolean secure = false;
+        boolean mobileData = false;
+        try {
+            secure = context.checkSelfPermission(Manifest.permission.WRITE_SECURE_SETTINGS) ==
+                    PackageManager.PERMISSION_GRANTED;
+            DevicePolicyManager dpm = context.getSystemService(DevicePolicyManager.class);
+            owner = dpm != null && dpm.isDeviceOwnerApp(context.getPackageName());
+            // Not on the setGlobalSetting() allow-list, so only the adb grant makes it writable
+            mobileData = secure;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to detect capabilities: " + e.getMessage(), e);
+        }
+        deviceOwner = owner;
+        secureSettingsGranted = secure;
+        mobileDataWritable = mobileData;
+        detected = true;
+        Log.i(TAG, "deviceOwner=" + owner + ", secureSettings=" + secure +
+                ", mobileDataWritable=" + mobileData);
+    }
+
+    public boolean isDetected() {
+        return detected;
+    }
+
+    public boolean isDeviceOwner() {
+        return deviceOwner;
+    }
+
+    public boolean hasSecureSettingsAccess() {
+        return secureSettingsGranted;
+    }
+
+    public boolean canWriteMobileData() {
+        return mobileDataWritable;
+    }
+
+    /**
+     * Write a global setting directly with WRITE_SECURE_SETTINGS.
+     * Returns false if the platform refused, the key is then not tried again until the next detect().
+     */
+    boolean writeGlobalSetting(String key, String value) {
+        if (!secureSettingsGranted) {
+            return false;
+        }
+        try {
+            return Settings.Global.putString(context.getContentResolver(), key, value);
+        } catch (SecurityException e) {
+            Log.w(TAG, "Not allowed to write " + key + ": " + e.getMessage());
+            disable(key);
+            return false;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write " + key + ": " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Stop writing the key directly, e.g. because the write had no effect on this device
+     */
+    void disable(String key) {
+        if (GLOBAL_MOBILE_DATA.equals(key)) {
+            mobileDataWritable = false;
+        }
+    }
+}
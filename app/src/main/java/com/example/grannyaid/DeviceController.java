@@ -0,0 +1,122 @@
+package com.example.grannyaid;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The device as seen by the fix flow: reading every setting, changing it directly where the
+ * platform allows, and opening the Settings screen where it doesn't.
+ * DeviceSettingsManager is the real device; tests run the fix flow against a simulated one,
+ * see GrannyAidApplication.createDeviceController().
+ *
+ * The checks and changes may make binder calls, call them off the main thread,
+ * except for the guided ones, which open a Settings screen.
+ */
+public interface DeviceController {
+
+    /**
+     * Whether the app may write system settings and, on Android 12+, control Bluetooth
+     */
+    boolean hasRequiredPermissions();
+
+    /**
+     * Every connectivity setting as currently known without asking the system,
+     * or null if some value isn't known
+     */
+    DeviceStateSnapshot cachedSnapshot();
+
+    boolean isAirplaneModeEnabled();
+
+    boolean isWifiEnabled();
+
+    boolean isBluetoothEnabled();
+
+    /**
+     * Check if the mobile data switch is on; reads as on while setSkipMobileDataCheck() is set
+     */
+    boolean isMobileDataEnabled();
+
+    /**
+     * The actual mobile data state, ignoring the skip flag
+     */
+    boolean probeMobileDataEnabled();
+
+    /**
+     * Set a flag to bypass the mobile data check, while airplane mode makes mobile data irrelevant
+     */
+    void setSkipMobileDataCheck(boolean skip);
+
+    /**
+     * Wait, without blocking, for the system to confirm that a connectivity setting reached the target.
+     * Completes with false if it never does.
+     */
+    CompletableFuture<Boolean> confirmState(Setting setting, boolean target);
+
+    /**
+     * Open the Settings screen for airplane mode
+     *
+     * @return Always false, the setting wasn't changed
+     */
+    boolean setAirplaneMode(boolean enable);
+
+    /**
+     * @return Whether the platform accepted the change
+     */
+    boolean setBluetooth(boolean enable);
+
+    boolean canSetWifiDirectly();
+
+    /**
+     * Switch WiFi directly where canSetWifiDirectly(), otherwise open the Settings screen for it
+     *
+     * @return Whether the platform accepted the change
+     */
+    boolean setWifi(boolean enable);
+
+    boolean canSetMobileNetworkDirectly();
+
+    /**
+     * @return Whether the platform accepted the change
+     */
+    boolean setMobileNetworkDirectly(boolean enable);
+
+    /**
+     * Stop switching mobile data directly after a write that the system didn't act on
+     */
+    void disableMobileNetworkDirectly();
+
+    /**
+     * Open the Settings screen for mobile data
+     *
+     * @return Always false, the setting wasn't changed
+     */
+    boolean setMobileNetwork(boolean enable);
+
+    /**
+     * Open the Settings screen where the user changes this connectivity setting, for a row of the
+     * guided checklist. Never changes the setting itself, even where the platform would allow it.
+     */
+    void openSettingsScreen(Setting setting);
+
+    /**
+     * Whether the guided steps open the Android 10+ connectivity panel
+     */
+    boolean isConnectivityPanelAvailable();
+
+    /**
+     * Current index of every managed volume stream, null if they can't be read
+     */
+    int[] readVolumeIndices();
+
+    /**
+     * Check if the given volume setting already matches the percentage, using indices from readVolumeIndices()
+     */
+    boolean isVolumeSet(Setting setting, int volumePercent, int[] indices);
+
+    boolean setSoundVolume(int volumePercent);
+
+    boolean isSoundVolumeSet(int volumePercent);
+
+    boolean setEarpieceVolume(int volumePercent);
+
+    boolean isEarpieceVolumeSet(int volumePercent);
+}
@@ -0,0 +1,87 @@
+package com.example.grannyaid;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The one executor for every binder call and preference access the app makes.
+ * Probes, applies, confirmations and preference loads all run here and post their
+ * results back to the main thread, so a slow system service can never freeze the UI.
+ *
+ * Binder calls are invisible to StrictMode, so DeviceSettingsManager reports each one
+ * through noteDeviceCall(). In debug builds GrannyAidApplication turns that, and every
+ * main-thread disk access, into a crash.
+ */
+public final class DeviceIo {
+    private static final String TAG = "DeviceIo";
+
+    // Enough for all probes of a snapshot plus a few applies at the same time
+    private static final int THREADS = 6;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "GrannyAid-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Receives the result of background work on the main thread
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private DeviceIo() {
+    }
+
+    public static ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Run work on the I/O executor and deliver its result on the main thread.
+     * If the work fails, the callback gets fallback.
+     */
+    public static <T> void run(Callable<T> work, T fallback, Callback<T> callback) {
+        executor.execute(() -> {
+            T result;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                Log.e(TAG, "Background work failed: " + e.getMessage(), e);
+                result = fallback;
+            }
+            T delivered = result;
+            mainHandler.post(() -> callback.onResult(delivered));
+        });
+    }
+
+    public static void execute(Runnable work) {
+        executor.execute(work);
+    }
+
+    public static void postToMain(Runnable action) {
+        mainHandler.post(action);
+    }
+
+    public static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * Report a binder call to StrictMode if it is made on the main thread
+     */
+    static void noteDeviceCall(String what) {
+        if (isMainThread()) {
+            StrictMode.noteSlowCall("Device call on the main thread: " + what);
+        }
+    }
+}
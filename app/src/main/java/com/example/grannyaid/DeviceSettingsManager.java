@@ -1,116 +1,233 @@
 package com.example.grannyaid;
 
 import android.Manifest;
-import android.app.AlertDialog;
+import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothManager;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.media.AudioManager;
 import android.net.wifi.WifiManager;
 import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.provider.Settings;
+import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import android.util.Log;
 
 import androidx.annotation.RequiresPermission;
 
-public class DeviceSettingsManager {
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+public class DeviceSettingsManager implements DeviceController {
     private static final String TAG = "DeviceSettingsManager";
     
+    // Trace sections and FixMetrics steps, one per probe and apply
+    static final String PHASE_PROBE_AIRPLANE_MODE = "probe.airplane_mode";
+    static final String PHASE_PROBE_WIFI = "probe.wifi";
+    static final String PHASE_PROBE_BLUETOOTH = "probe.bluetooth";
+    static final String PHASE_PROBE_MOBILE_DATA = "probe.mobile_data";
+    static final String PHASE_PROBE_VOLUME = "probe.volume";
+    static final String PHASE_APPLY_AIRPLANE_MODE = "apply.airplane_mode";
+    static final String PHASE_APPLY_BLUETOOTH = "apply.bluetooth";
+    static final String PHASE_APPLY_WIFI = "apply.wifi";
+    static final String PHASE_APPLY_MOBILE_NETWORK = "apply.mobile_network";
+    
+    // Radios can take several seconds to come up after an accepted request
+    private static final long CONFIRM_TIMEOUT_MS = 8000;
+    
+    // Transient state of a fix, kept apart from the saved profiles
+    private static final String FIX_STATE_PREFS_NAME = "GrannyAidFixState";
+    private static final String KEY_SKIP_MOBILE_DATA_CHECK = "skip_mobile_data_check";
+    
+    // Copy of the stored skip flag, so an unchanged value is neither read nor written again
+    private static volatile Boolean skipMobileDataCheck;
+    
     private final Context context;
     private final AudioManager audioManager;
     private final WifiManager wifiManager;
+    private final VolumeEngine volumeEngine;
+    private final DeviceStateCache stateCache;
+    private final FixMetrics metrics;
+    private final DeviceCapabilities capabilities;
+    private final SettingsScreens screens;
+    
+    // Looked up once, the adapter never changes for the life of the process
+    private BluetoothAdapter bluetoothAdapter;
+    private boolean bluetoothAdapterResolved = false;
     
     public DeviceSettingsManager(Context context) {
         this.context = context;
         this.audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
         this.wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        this.volumeEngine = new VolumeEngine(audioManager);
+        this.stateCache = DeviceStateCache.getInstance(context);
+        this.metrics = FixMetrics.getInstance(context);
+        this.capabilities = DeviceCapabilities.getInstance(context);
+        this.screens = SettingsScreens.getInstance(context);
+    }
+    
+    @Override
+    public DeviceStateSnapshot cachedSnapshot() {
+        return stateCache.snapshotIfFresh();
+    }
+    
+    /**
+     * Open the trace section of one probe or apply, returns the start time for endPhase()
+     */
+    private static long beginPhase(String section) {
+        Trace.beginSection(section);
+        return SystemClock.elapsedRealtime();
+    }
+    
+    private void endPhase(String section, long startMs) {
+        Trace.endSection();
+        metrics.record(section, startMs, SystemClock.elapsedRealtime());
+    }
+    
+    private synchronized BluetoothAdapter getBluetoothAdapter() {
+        if (!bluetoothAdapterResolved) {
+            BluetoothManager bluetoothManager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
+            bluetoothAdapter = bluetoothManager != null ? bluetoothManager.getAdapter() : null;
+            bluetoothAdapterResolved = true;
+        }
+        return bluetoothAdapter;
+    }
+    
+    /**
+     * Whether the app may write system settings and, on Android 12+, control Bluetooth.
+     * Both are answered by system services, call this off the main thread.
+     */
+    @Override
+    public boolean hasRequiredPermissions() {
+        DeviceIo.noteDeviceCall("permission check");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && !Settings.System.canWrite(context)) {
+            return false;
+        }
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.S ||
+                context.checkSelfPermission(Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED;
     }
     
     /**
      * Check if airplane mode is currently enabled
      */
+    @Override
     public boolean isAirplaneModeEnabled() {
+        long start = beginPhase(PHASE_PROBE_AIRPLANE_MODE);
         try {
-            return Settings.Global.getInt(context.getContentResolver(), 
-                    Settings.Global.AIRPLANE_MODE_ON, 0) == 1;
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to check airplane mode state: " + e.getMessage(), e);
-            return false;
+            Boolean cached = stateCache.getAirplaneMode();
+            if (cached != null) {
+                return cached;
+            }
+            DeviceIo.noteDeviceCall(PHASE_PROBE_AIRPLANE_MODE);
+            try {
+                boolean enabled = Settings.Global.getInt(context.getContentResolver(), 
+                        Settings.Global.AIRPLANE_MODE_ON, 0) == 1;
+                stateCache.putAirplaneMode(enabled);
+                return enabled;
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to check airplane mode state: " + e.getMessage(), e);
+                return false;
+            }
+        } finally {
+            endPhase(PHASE_PROBE_AIRPLANE_MODE, start);
         }
     }
     
     /**
      * Check if WiFi is currently enabled
      */
+    @Override
     public boolean isWifiEnabled() {
+        long start = beginPhase(PHASE_PROBE_WIFI);
         try {
-            return wifiManager.isWifiEnabled();
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to check WiFi state: " + e.getMessage(), e);
-            return false;
+            Boolean cached = stateCache.getWifi();
+            if (cached != null) {
+                return cached;
+            }
+            DeviceIo.noteDeviceCall(PHASE_PROBE_WIFI);
+            try {
+                boolean enabled = wifiManager.isWifiEnabled();
+                stateCache.putWifi(enabled);
+                return enabled;
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to check WiFi state: " + e.getMessage(), e);
+                return false;
+            }
+        } finally {
+            endPhase(PHASE_PROBE_WIFI, start);
         }
     }
     
     /**
      * Check if Bluetooth is currently enabled
      */
+    @Override
     public boolean isBluetoothEnabled() {
+        long start = beginPhase(PHASE_PROBE_BLUETOOTH);
         try {
-            BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-            if (bluetoothAdapter == null) {
-                Log.e(TAG, "Bluetooth not supported on this device");
+            Boolean cached = stateCache.getBluetooth();
+            if (cached != null) {
+                return cached;
+            }
+            DeviceIo.noteDeviceCall(PHASE_PROBE_BLUETOOTH);
+            try {
+                BluetoothAdapter bluetoothAdapter = getBluetoothAdapter();
+                if (bluetoothAdapter == null) {
+                    Log.e(TAG, "Bluetooth not supported on this device");
+                    return false;
+                }
+                boolean enabled = bluetoothAdapter.isEnabled();
+                stateCache.putBluetooth(enabled);
+                return enabled;
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to check Bluetooth state: " + e.getMessage(), e);
                 return false;
             }
-            return bluetoothAdapter.isEnabled();
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to check Bluetooth state: " + e.getMessage(), e);
-            return false;
+        } finally {
+            endPhase(PHASE_PROBE_BLUETOOTH, start);
         }
     }
     
     /**
-     * Check if mobile data is currently enabled (best effort)
-     * Since it's difficult to reliably check mobile data state on all Android versions,
-     * we allow bypassing mobile data dialog if asked to do so.
-     * This may not work on all devices due to API restrictions.
+     * Check if the mobile data switch is on, whether or not Wi-Fi is connected (see MobileDataProbe).
+     * The check can be bypassed while airplane mode makes mobile data irrelevant.
      */
+    @Override
     public boolean isMobileDataEnabled() {
+        // Return true for desired setting to prevent dialogs
+        // in the case where the setting is already correct
+        if (isSkipMobileDataCheck()) {
+            return true;
+        }
+        return probeMobileDataEnabled();
+    }
+    
+    /**
+     * Query the actual mobile data state, ignoring the skip flag.
+     * Used by DeviceStateSnapshot, which runs before the skip flag is decided.
+     */
+    @Override
+    public boolean probeMobileDataEnabled() {
+        long start = beginPhase(PHASE_PROBE_MOBILE_DATA);
         try {
-            // Return true for desired setting to prevent dialogs
-            // in the case where the setting is already correct
-            if (context.getSharedPreferences("GrannyAidPrefs", Context.MODE_PRIVATE)
-                    .getBoolean("skip_mobile_data_check", false)) {
-                return true;
+            Boolean cached = stateCache.getMobileData();
+            if (cached != null) {
+                return cached;
             }
-            
-            // This approach isn't reliable on all devices, but it's a best effort
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                // On Android 10+, use ConnectivityManager with NetworkCapabilities
-                android.net.ConnectivityManager cm = (android.net.ConnectivityManager)
-                        context.getSystemService(Context.CONNECTIVITY_SERVICE);
-                android.net.Network network = cm.getActiveNetwork();
-                if (network == null) return false;
-                
-                android.net.NetworkCapabilities capabilities = cm.getNetworkCapabilities(network);
-                return capabilities != null && 
-                       capabilities.hasTransport(android.net.NetworkCapabilities.TRANSPORT_CELLULAR);
-            } else {
-                // For older versions, try to use reflection (may not work on all devices)
-                android.net.ConnectivityManager cm = (android.net.ConnectivityManager)
-                        context.getSystemService(Context.CONNECTIVITY_SERVICE);
-                try {
-                    java.lang.reflect.Method method = cm.getClass().getMethod("getMobileDataEnabled");
-                    method.setAccessible(true);
-                    return (Boolean) method.invoke(cm);
-                } catch (Exception e) {
-                    Log.e(TAG, "Reflection failed for mobile data check: " + e.getMessage(), e);
-                    return false;
-                }
+            DeviceIo.noteDeviceCall(PHASE_PROBE_MOBILE_DATA);
+            Boolean enabled = MobileDataProbe.getInstance(context).probe();
+            if (enabled == null) {
+                // Nothing can tell on this phone, report it off so the user is guided to check
+                return false;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to check mobile data state: " + e.getMessage(), e);
-            return false;
+            stateCache.putMobileData(enabled);
+            return enabled;
+        } finally {
+            endPhase(PHASE_PROBE_MOBILE_DATA, start);
         }
     }
     
@@ -118,292 +235,390 @@ public class DeviceSettingsManager {
      * Set a flag to bypass mobile data check on next call
      * This is useful for airplane mode where mobile data cannot be enabled
      */
+    @Override
     public void setSkipMobileDataCheck(boolean skip) {
+        if (Boolean.valueOf(skip).equals(skipMobileDataCheck)) {
+            return;
+        }
+        skipMobileDataCheck = skip;
         try {
-            context.getSharedPreferences("GrannyAidPrefs", Context.MODE_PRIVATE)
+            context.getSharedPreferences(FIX_STATE_PREFS_NAME, Context.MODE_PRIVATE)
                 .edit()
-                .putBoolean("skip_mobile_data_check", skip)
+                .putBoolean(KEY_SKIP_MOBILE_DATA_CHECK, skip)
                 .apply();
         } catch (Exception e) {
             Log.e(TAG, "Failed to set skip mobile data flag: " + e.getMessage(), e);
         }
     }
     
+    private boolean isSkipMobileDataCheck() {
+        Boolean skip = skipMobileDataCheck;
+        if (skip == null) {
+            try {
+                skip = context.getSharedPreferences(FIX_STATE_PREFS_NAME, Context.MODE_PRIVATE)
+                        .getBoolean(KEY_SKIP_MOBILE_DATA_CHECK, false);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to read skip mobile data flag: " + e.getMessage(), e);
+                skip = false;
+            }
+            skipMobileDataCheck = skip;
+        }
+        return skip;
+    }
+    
     /**
-     * Opens airplane mode settings since direct control requires higher permissions on modern Android
+     * Wait, without blocking, for the system to confirm that a connectivity setting reached the target.
+     * If no change event arrives in time, the state is probed once more before giving up.
+     * Mobile data is only confirmed by telephony itself: the only change ever confirmed is a direct
+     * write, and the key it wrote reads back as written even when telephony ignored it.
+     */
+    @Override
+    public CompletableFuture<Boolean> confirmState(Setting setting, boolean target) {
+        String phase = "confirm." + setting.name().toLowerCase(Locale.ROOT);
+        long start = SystemClock.elapsedRealtime();
+        CompletableFuture<Boolean> confirmation;
+        if (setting == Setting.MOBILE_NETWORK) {
+            MobileDataProbe probe = MobileDataProbe.getInstance(context);
+            confirmation = stateCache.awaitCheck(setting,
+                    () -> Boolean.valueOf(target).equals(probe.probeReported()), CONFIRM_TIMEOUT_MS);
+        } else {
+            confirmation = stateCache.awaitState(setting, target, CONFIRM_TIMEOUT_MS)
+                    .thenApplyAsync(confirmed -> confirmed || readState(setting) == target, stateCache.getExecutor());
+        }
+        return confirmation.whenComplete((confirmed, error) -> {
+            metrics.record(phase, start, SystemClock.elapsedRealtime());
+            Log.d(TAG, setting + " confirmed=" + confirmed + " after " +
+                    (SystemClock.elapsedRealtime() - start) + "ms");
+        });
+    }
+    
+    private boolean readState(Setting setting) {
+        switch (setting) {
+            case AIRPLANE_MODE:
+                return isAirplaneModeEnabled();
+            case MOBILE_NETWORK:
+                return probeMobileDataEnabled();
+            case WIFI:
+                return isWifiEnabled();
+            case BLUETOOTH:
+                return isBluetoothEnabled();
+            default:
+                throw new IllegalArgumentException("Not a connectivity setting: " + setting);
+        }
+    }
+    
+    /**
+     * Opens airplane mode settings since direct control requires higher permissions on modern Android.
+     * The guided checklist tells the user what to change there.
      * 
      * @param enable The desired state (used for UI feedback only)
      * @return Always returns false to indicate programmatic setting wasn't possible
      */
+    @Override
     public boolean setAirplaneMode(boolean enable) {
+        long start = beginPhase(PHASE_APPLY_AIRPLANE_MODE);
         try {
-            // First show guidance dialog BEFORE opening settings
-            new AlertDialog.Builder(context)
-                    .setTitle(R.string.airplane_guide_title)
-                    .setMessage(context.getString(enable ? 
-                            R.string.airplane_guide_enable : 
-                            R.string.airplane_guide_disable))
-                    .setPositiveButton(android.R.string.ok, (dialog, which) -> {
-                        openAirplaneModeSettings();
-                    })
-                    .show();
-            
-            Log.i(TAG, "Showing airplane mode guidance dialog");
+            openGuidedScreen(SettingsScreens.AIRPLANE_MODE);
             return false; // Return false because the setting wasn't automatically applied
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to show airplane mode dialog: " + e.getMessage(), e);
-            return false;
+        } finally {
+            endPhase(PHASE_APPLY_AIRPLANE_MODE, start);
         }
     }
     
     /**
-     * Helper method to open the airplane mode settings
+     * Open a Settings screen for a guided step. Started from an activity it joins the app's task,
+     * so Back leads straight to GrannyAid, and GuidedReturn may bring the app forward again once
+     * the setting flipped: from Android 10 only an app with an activity in the foreground task
+     * is allowed to start activities from the background.
      */
-    private void openAirplaneModeSettings() {
-        // There's no direct ACTION constant for Airplane Mode in Settings
-        // So we use different intents based on Android version
-        Intent intent;
-        
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) { // Android 14 (API 34)
-            try {
-                // For Android 14+, airplane mode is in "More connectivity options"
-                // Make the intent final so it can be used in the lambda
-                final Intent android14Intent = new Intent(Settings.ACTION_WIRELESS_SETTINGS); // Opens Network & Internet
-                android14Intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                
-                // Show only ONE dialog with Android 14 specific instructions
-                new AlertDialog.Builder(context)
-                        .setTitle(R.string.airplane_guide_title)
-                        .setMessage(R.string.airplane_guide_android14)
-                        .setPositiveButton(android.R.string.ok, (dialog, which) -> {
-                            try {
-                                // Launch the intent only after showing instructions
-                                context.startActivity(android14Intent);
-                                Log.i(TAG, "Opened Android 14 settings for airplane mode adjustment");
-                            } catch (Exception e) {
-                                // If primary intent fails, try the fallback within the same dialog's callback
-                                Log.e(TAG, "Primary settings intent failed, trying fallback: " + e.getMessage());
-                                try {
-                                    Intent fallbackIntent = new Intent(Settings.ACTION_SETTINGS);
-                                    fallbackIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                                    context.startActivity(fallbackIntent);
-                                    Log.i(TAG, "Opened fallback settings for Android 14");
-                                } catch (Exception e2) {
-                                    Log.e(TAG, "Both primary and fallback intents failed: " + e2.getMessage());
-                                    // Don't show another dialog, just log the error
-                                }
-                            }
-                        })
-                        .show();
-                
-                Log.i(TAG, "Showing Android 14 specific airplane mode guidance");
-                return;
-            } catch (Exception e) {
-                // If dialog creation fails, log but don't show another dialog
-                Log.e(TAG, "Failed to show Android 14 guidance dialog: " + e.getMessage());
-                // Fall through to default behavior
-            }
+    private void startSettingsActivity(Intent intent) {
+        if (!(context instanceof Activity)) {
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        }
+        context.startActivity(intent);
+    }
+    
+    @Override
+    public void openSettingsScreen(Setting setting) {
+        switch (setting) {
+            case AIRPLANE_MODE:
+                openGuidedScreen(SettingsScreens.AIRPLANE_MODE);
+                break;
+            case MOBILE_NETWORK:
+                openGuidedScreen(SettingsScreens.MOBILE_NETWORK);
+                break;
+            case WIFI:
+                openGuidedScreen(SettingsScreens.WIFI);
+                break;
+            default:
+                throw new IllegalArgumentException("No guided screen for " + setting);
+        }
+    }
+    
+    /**
+     * Open the screen where the user changes one setting, as resolved by SettingsScreens.
+     * On Android 10+ Wi-Fi and mobile data are changed in a Settings panel instead, it opens over
+     * the app; so is airplane mode before Android 12, whose Internet panel dropped that switch.
+     * A screen from the overrides asset wins over the panel, the asset names it for a reason.
+     * The main Settings screen is the last resort.
+     */
+    private void openGuidedScreen(String screen) {
+        String action = screens.getAction(screen);
+        // Only once resolved, so that a tap never waits for the package manager
+        if (screens.isResolved() && !screens.isOverridden(screen) && panelHolds(screen) &&
+                isConnectivityPanelAvailable()) {
+            action = SettingsScreens.WIFI.equals(screen) ?
+                    Settings.Panel.ACTION_WIFI : Settings.Panel.ACTION_INTERNET_CONNECTIVITY;
+        }
+        if (action == null) {
+            action = Settings.ACTION_SETTINGS;
         }
-        
-        // For Android 10-13 and fallback for Android 14 if specific handling failed
         try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                // For Android 10-13, use network settings which contains airplane mode
-                intent = new Intent(Settings.ACTION_NETWORK_OPERATOR_SETTINGS);
-            } else {
-                // For older Android versions
-                intent = new Intent(Settings.ACTION_WIRELESS_SETTINGS);
-            }
-            
-            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-            context.startActivity(intent);
-            
-            Log.i(TAG, "Opened settings for airplane mode adjustment");
+            startSettingsActivity(new Intent(action));
+            Log.i(TAG, "Opened " + action + " for " + screen);
         } catch (Exception e) {
-            Log.e(TAG, "Failed to open airplane mode settings: " + e.getMessage(), e);
-            // Try a fallback intent if the first one failed
+            Log.e(TAG, "Failed to open " + action + ", trying the main Settings screen: " + e.getMessage(), e);
             try {
-                // Show the fallback guidance dialog
-                new AlertDialog.Builder(context)
-                        .setTitle(R.string.airplane_guide_title)
-                        .setMessage(R.string.airplane_guide_fallback)
-                        .setPositiveButton(android.R.string.ok, (dialog, which) -> {
-                            Intent fallbackIntent = new Intent(Settings.ACTION_SETTINGS);
-                            fallbackIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                            context.startActivity(fallbackIntent);
-                        })
-                        .show();
+                startSettingsActivity(new Intent(Settings.ACTION_SETTINGS));
             } catch (Exception e2) {
                 Log.e(TAG, "Fallback settings open also failed: " + e2.getMessage(), e2);
             }
         }
     }
+
+    private static boolean panelHolds(String screen) {
+        return !SettingsScreens.AIRPLANE_MODE.equals(screen) ||
+                Build.VERSION.SDK_INT < Build.VERSION_CODES.S;
+    }
     
     @RequiresPermission(Manifest.permission.BLUETOOTH_CONNECT)
+    @Override
     public boolean setBluetooth(boolean enable) {
+        long start = beginPhase(PHASE_APPLY_BLUETOOTH);
+        DeviceIo.noteDeviceCall(PHASE_APPLY_BLUETOOTH);
         try {
-            BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-            if (bluetoothAdapter == null) {
-                Log.e(TAG, "Bluetooth not supported on this device");
-                return false;
-            }
+            try {
+                BluetoothAdapter bluetoothAdapter = getBluetoothAdapter();
+                if (bluetoothAdapter == null) {
+                    Log.e(TAG, "Bluetooth not supported on this device");
+                    return false;
+                }
             
-            if (enable) {
-                return bluetoothAdapter.enable();
-            } else {
-                return bluetoothAdapter.disable();
+                if (enable) {
+                    return bluetoothAdapter.enable();
+                } else {
+                    return bluetoothAdapter.disable();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to set Bluetooth: " + e.getMessage());
+                return false;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to set Bluetooth: " + e.getMessage());
-            return false;
+        } finally {
+            endPhase(PHASE_APPLY_BLUETOOTH, start);
         }
     }
     
+    /**
+     * Whether Bluetooth can be switched without the user: before Android 13, or as Device Owner.
+     * From Android 13 BluetoothAdapter.enable() and disable() just return false for other apps.
+     */
+    public boolean canSetBluetoothDirectly() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU || capabilities.isDeviceOwner();
+    }
+    
+    /**
+     * Whether WiFi can be switched without the user: before Android 10, or as Device Owner
+     */
+    @Override
+    public boolean canSetWifiDirectly() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || capabilities.isDeviceOwner();
+    }
+    
+    @Override
     public boolean setWifi(boolean enable) {
+        long start = beginPhase(PHASE_APPLY_WIFI);
         try {
-            // On Android 10 (Q) and above, apps cannot enable/disable WiFi directly
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                // First show guidance dialog, BEFORE opening WiFi settings
-                new AlertDialog.Builder(context)
-                        .setTitle(R.string.wifi_guide_title)
-                        .setMessage(context.getString(enable ? 
-                                R.string.wifi_guide_enable : 
-                                R.string.wifi_guide_disable))
-                        .setPositiveButton(android.R.string.ok, (dialog, which) -> {
-                            // Only open WiFi settings after user has read instructions
-                            Intent intent = new Intent(Settings.ACTION_WIFI_SETTINGS);
-                            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                            context.startActivity(intent);
-                            Log.i(TAG, "Opened WiFi settings for manual adjustment on Android 10+");
-                        })
-                        .show();
-                
+            try {
+                // On Android 10 (Q) and above, apps cannot enable/disable WiFi directly, unless they are Device Owner
+                if (!canSetWifiDirectly()) {
+                    // The guided checklist tells the user what to change
+                    openGuidedScreen(SettingsScreens.WIFI);
+                    return false;
+                } else {
+                    // On older Android versions, or as Device Owner, we can still control WiFi directly
+                    DeviceIo.noteDeviceCall(PHASE_APPLY_WIFI);
+                    return wifiManager.setWifiEnabled(enable);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to set WiFi: " + e.getMessage());
                 return false;
-            } else {
-                // On older Android versions, we can still control WiFi directly
-                return wifiManager.setWifiEnabled(enable);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to set WiFi: " + e.getMessage());
-            return false;
+        } finally {
+            endPhase(PHASE_APPLY_WIFI, start);
         }
     }
     
     /**
-     * Opens mobile data settings since direct control is not possible on modern Android devices
+     * Whether mobile data can be switched without the user, only possible with WRITE_SECURE_SETTINGS
+     * granted over adb; being Device Owner does not help
+     */
+    @Override
+    public boolean canSetMobileNetworkDirectly() {
+        return capabilities.canWriteMobileData();
+    }
+    
+    /**
+     * Switch mobile data without any dialog, see canSetMobileNetworkDirectly()
+     * 
+     * @return Whether the platform accepted the change
+     */
+    @Override
+    public boolean setMobileNetworkDirectly(boolean enable) {
+        long start = beginPhase(PHASE_APPLY_MOBILE_NETWORK);
+        DeviceIo.noteDeviceCall(PHASE_APPLY_MOBILE_NETWORK);
+        try {
+            String value = enable ? "1" : "0";
+            if (!capabilities.writeGlobalSetting(DeviceCapabilities.GLOBAL_MOBILE_DATA, value)) {
+                return false;
+            }
+            // Phones with several SIMs keep the switch per subscription, telephony watches both keys
+            int subId = SubscriptionManager.getDefaultDataSubscriptionId();
+            if (capabilities.hasSecureSettingsAccess() && subId != SubscriptionManager.INVALID_SUBSCRIPTION_ID) {
+                capabilities.writeGlobalSetting(DeviceCapabilities.GLOBAL_MOBILE_DATA + subId, value);
+            }
+            return true;
+        } finally {
+            endPhase(PHASE_APPLY_MOBILE_NETWORK, start);
+        }
+    }
+    
+    /**
+     * Stop switching mobile data directly after a write that the system didn't act on,
+     * e.g. because telephony on this phone no longer reads the global key
+     */
+    @Override
+    public void disableMobileNetworkDirectly() {
+        Log.w(TAG, "Mobile data didn't follow the setting, guiding the user from now on");
+        capabilities.disable(DeviceCapabilities.GLOBAL_MOBILE_DATA);
+    }
+    
+    /**
+     * Opens mobile data settings since direct control is not possible on modern Android devices.
+     * The guided checklist tells the user what to change there.
      * 
      * @param enable The desired state (used for UI feedback only)
      * @return Always returns false to indicate programmatic setting wasn't possible
      */
+    @Override
     public boolean setMobileNetwork(boolean enable) {
+        long start = beginPhase(PHASE_APPLY_MOBILE_NETWORK);
         try {
-            // First show guidance dialog BEFORE opening settings
-            new AlertDialog.Builder(context)
-                    .setTitle(R.string.mobile_data_guide_title)
-                    .setMessage(context.getString(enable ? 
-                            R.string.mobile_data_guide_enable : 
-                            R.string.mobile_data_guide_disable))
-                    .setPositiveButton(android.R.string.ok, (dialog, which) -> {
-                        openMobileDataSettings();
-                    })
-                    .show();
-            
-            Log.i(TAG, "Showing mobile data guidance dialog");
+            openGuidedScreen(SettingsScreens.MOBILE_NETWORK);
             return false; // Return false because the setting wasn't automatically applied
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to show mobile network dialog: " + e.getMessage(), e);
+        } finally {
+            endPhase(PHASE_APPLY_MOBILE_NETWORK, start);
+        }
+    }
+    
+    /**
+     * Check if the Android 10+ connectivity panel can be shown on this device.
+     * Answered by SettingsScreens, which resolves it once per system update.
+     */
+    @Override
+    public boolean isConnectivityPanelAvailable() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
             return false;
         }
+        if (!screens.isResolved()) {
+            screens.resolve();
+        }
+        return screens.getAction(SettingsScreens.CONNECTIVITY_PANEL) != null;
     }
     
     /**
-     * Helper method to open the correct mobile data settings for different Android versions
+     * Current index of every stream managed by the volume engine, read in one pass
      */
-    private void openMobileDataSettings() {
+    @Override
+    public int[] readVolumeIndices() {
+        long start = beginPhase(PHASE_PROBE_VOLUME);
+        DeviceIo.noteDeviceCall(PHASE_PROBE_VOLUME);
         try {
-            // Try different intents to open data settings - these vary by Android version and manufacturer
-            Intent intent;
-            
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                // For Android 10+, use the network & internet settings
-                intent = new Intent(Settings.ACTION_NETWORK_OPERATOR_SETTINGS);
-            } else if (Build.VERSION.SDK_INT == Build.VERSION_CODES.P) {
-                // For Android 9 (Pie), use a more compatible setting
-                intent = new Intent(Settings.ACTION_NETWORK_OPERATOR_SETTINGS);
-                // Fallback in case the above doesn't work on some Android 9 devices
-                if (!isIntentResolvable(intent)) {
-                    intent = new Intent(Settings.ACTION_WIRELESS_SETTINGS);
-                }
-            } else {
-                // For older Android versions
-                intent = new Intent(Settings.ACTION_WIRELESS_SETTINGS);
-            }
-            
-            intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-            context.startActivity(intent);
-            
-            Log.i(TAG, "Opened Mobile Data settings for manual adjustment");
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to open mobile network settings: " + e.getMessage(), e);
-            // Try a fallback intent if the first one failed
             try {
-                // Show the fallback guidance dialog
-                new AlertDialog.Builder(context)
-                        .setTitle(R.string.mobile_data_guide_title)
-                        .setMessage(R.string.mobile_data_guide_fallback)
-                        .setPositiveButton(android.R.string.ok, (dialog, which) -> {
-                            Intent fallbackIntent = new Intent(Settings.ACTION_SETTINGS);
-                            fallbackIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                            context.startActivity(fallbackIntent);
-                        })
-                        .show();
-            } catch (Exception e2) {
-                Log.e(TAG, "Fallback settings open also failed: " + e2.getMessage(), e2);
+                return volumeEngine.readIndices();
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to read volumes: " + e.getMessage(), e);
+                return null;
             }
+        } finally {
+            endPhase(PHASE_PROBE_VOLUME, start);
         }
     }
     
     /**
-     * Check if an intent can be resolved to an activity
+     * Check if the given volume setting already matches the percentage, using indices from readVolumeIndices()
      */
-    private boolean isIntentResolvable(Intent intent) {
-        return intent.resolveActivity(context.getPackageManager()) != null;
+    @Override
+    public boolean isVolumeSet(Setting setting, int volumePercent, int[] indices) {
+        return indices != null && volumeEngine.matches(setting, volumePercent, indices);
     }
     
+    /**
+     * Set media, ring, notification and alarm volume, writing only streams that differ
+     */
+    @Override
     public boolean setSoundVolume(int volumePercent) {
-        try {
-            int maxVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
-            int volume = (volumePercent * maxVolume) / 100;
-            audioManager.setStreamVolume(AudioManager.STREAM_MUSIC, volume, 0);
-            return true;
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to set sound volume: " + e.getMessage());
-            return false;
-        }
+        return setVolume(Setting.SOUND_VOLUME, volumePercent);
     }
     
+    /**
+     * Check if the sound volume streams already match the given percentage
+     */
+    @Override
+    public boolean isSoundVolumeSet(int volumePercent) {
+        return isVolumeSet(Setting.SOUND_VOLUME, volumePercent, readVolumeIndices());
+    }
+    
+    /**
+     * Set the call volume, writing it only if it differs
+     */
+    @Override
     public boolean setEarpieceVolume(int volumePercent) {
+        return setVolume(Setting.EARPIECE_VOLUME, volumePercent);
+    }
+    
+    /**
+     * Check if the call volume already matches the given percentage
+     */
+    @Override
+    public boolean isEarpieceVolumeSet(int volumePercent) {
+        return isVolumeSet(Setting.EARPIECE_VOLUME, volumePercent, readVolumeIndices());
+    }
+    
+    private boolean setVolume(Setting setting, int volumePercent) {
+        String section = "apply." + setting.name().toLowerCase(Locale.ROOT);
+        long start = beginPhase(section);
+        DeviceIo.noteDeviceCall(section);
         try {
-            int maxVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_VOICE_CALL);
-            int volume = (volumePercent * maxVolume) / 100;
-            audioManager.setStreamVolume(AudioManager.STREAM_VOICE_CALL, volume, 0);
-            return true;
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to set earpiece volume: " + e.getMessage());
-            return false;
+            try {
+                return volumeEngine.apply(setting, volumePercent) >= 0;
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to set " + setting + ": " + e.getMessage());
+                return false;
+            }
+        } finally {
+            endPhase(section, start);
         }
     }
     
     @RequiresPermission(Manifest.permission.BLUETOOTH_CONNECT)
-    public boolean applyAllSettings(boolean bluetooth, boolean wifi,
-                                    boolean mobileNetwork, int soundVolume, int earpieceVolume) {
+    public boolean applyAllSettings(SettingsManager.Profile profile) {
         boolean success = true;
         
-        if (!setBluetooth(bluetooth)) success = false;
-        if (!setWifi(wifi)) success = false;
-        if (!setMobileNetwork(mobileNetwork)) success = false;
-        if (!setSoundVolume(soundVolume)) success = false;
-        if (!setEarpieceVolume(earpieceVolume)) success = false;
+        if (!setBluetooth(profile.getBluetooth())) success = false;
+        if (!setWifi(profile.getWifi())) success = false;
+        if (!setMobileNetwork(profile.getMobileNetwork())) success = false;
+        if (!setSoundVolume(profile.getSoundVolume())) success = false;
+        if (!setEarpieceVolume(profile.getEarpieceVolume())) success = false;
         
         return success;
     }
@@ -0,0 +1,462 @@
+package com.example.grannyaid;
+
+import android.Manifest;
+import android.bluetooth.BluetoothAdapter;
+import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.database.ContentObserver;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.Uri;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.telephony.SubscriptionManager;
+import android.util.Log;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Application-wide, in-memory copy of the device state.
+ * Registers once for the system broadcasts, a Settings.Global observer and a network callback,
+ * so DeviceSettingsManager can answer most state checks without a binder call.
+ * A value is only trusted while something is listening for its changes and it is not too old;
+ * otherwise the caller probes the system directly and stores the fresh result here.
+ * Listeners are told about every stored value, which lets an apply wait for the system
+ * to confirm the new state instead of polling.
+ */
+public final class DeviceStateCache {
+    private static final String TAG = "DeviceStateCache";
+
+    // Values older than this are probed again even if no change event arrived
+    // (events can be held back while the process is frozen in the background)
+    static final long MAX_AGE_MS = 5 * 60 * 1000;
+
+    private static final String KEY_MOBILE_DATA = "mobile_data";
+
+    // Sent whenever another SIM starts carrying data (TelephonyManager.ACTION_DEFAULT_DATA_SUBSCRIPTION_CHANGED)
+    private static final String ACTION_DEFAULT_DATA_SUBSCRIPTION_CHANGED =
+            "android.intent.action.ACTION_DEFAULT_DATA_SUBSCRIPTION_CHANGED";
+
+    private static DeviceStateCache instance;
+
+    /**
+     * Called on the cache thread whenever a value is stored
+     */
+    public interface Listener {
+        void onStateChanged(Setting setting, boolean value);
+    }
+
+    /**
+     * One cached value with the time it was last confirmed
+     */
+    private static final class Entry {
+        final boolean value;
+        final long updatedAt;
+
+        Entry(boolean value) {
+            this.value = value;
+            this.updatedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    private final Context context;
+    private final Handler handler;
+
+    private volatile Entry airplaneMode;
+    private volatile Entry wifi;
+    private volatile Entry bluetooth;
+    private volatile Entry mobileData;
+
+    // Whether change events can actually reach us for each value
+    private volatile boolean airplaneModeObserved = false;
+    private volatile boolean wifiObserved = false;
+    private volatile boolean bluetoothObserved = false;
+    private volatile boolean mobileDataObserved = false;
+
+    private boolean bluetoothReceiverRegistered = false;
+
+    // Watches the mobile data key of the SIM that carries data, replaced when that SIM changes
+    private ContentObserver mobileDataObserver;
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public static synchronized DeviceStateCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new DeviceStateCache(context.getApplicationContext());
+            instance.start();
+        }
+        return instance;
+    }
+
+    private DeviceStateCache(Context context) {
+        this.context = context;
+        HandlerThread thread = new HandlerThread("GrannyAid-state");
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Register all listeners on the cache's own thread so the caller never waits on it
+     */
+    private void start() {
+        handler.post(() -> {
+            registerSystemReceiver();
+            registerBluetoothReceiver();
+            registerSettingsObserver();
+            if (registerSubscriptionReceiver()) {
+                observeMobileData();
+            }
+            registerNetworkCallback();
+        });
+    }
+
+    /**
+     * Call when runtime permissions change, so listeners that needed them can be registered
+     */
+    public void onPermissionsChanged() {
+        handler.post(this::registerBluetoothReceiver);
+    }
+
+    /**
+     * Cached airplane mode state, or null if it has to be probed
+     */
+    public Boolean getAirplaneMode() {
+        return freshValue(airplaneMode, airplaneModeObserved);
+    }
+
+    public Boolean getWifi() {
+        return freshValue(wifi, wifiObserved);
+    }
+
+    public Boolean getBluetooth() {
+        return freshValue(bluetooth, bluetoothObserved);
+    }
+
+    public Boolean getMobileData() {
+        return freshValue(mobileData, mobileDataObserved);
+    }
+
+    public void putAirplaneMode(boolean value) {
+        airplaneMode = new Entry(value);
+        notifyListeners(Setting.AIRPLANE_MODE, value);
+    }
+
+    public void putWifi(boolean value) {
+        wifi = new Entry(value);
+        notifyListeners(Setting.WIFI, value);
+    }
+
+    public void putBluetooth(boolean value) {
+        bluetooth = new Entry(value);
+        notifyListeners(Setting.BLUETOOTH, value);
+    }
+
+    public void putMobileData(boolean value) {
+        mobileData = new Entry(value);
+        notifyListeners(Setting.MOBILE_NETWORK, value);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners(Setting setting, boolean value) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        // Values put by probes on other threads are delivered on the cache thread as well
+        handler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onStateChanged(setting, value);
+            }
+        });
+    }
+
+    /**
+     * Executor running on the cache thread
+     */
+    public Executor getExecutor() {
+        return handler::post;
+    }
+
+    /**
+     * Future that completes with true once the setting is confirmed to be in the target state,
+     * or with false if that doesn't happen within the timeout. Only the connectivity
+     * settings (airplane mode, mobile data, WiFi and Bluetooth) can be awaited.
+     */
+    public CompletableFuture<Boolean> awaitState(Setting setting, boolean target, long timeoutMs) {
+        if (setting == Setting.SOUND_VOLUME || setting == Setting.EARPIECE_VOLUME) {
+            throw new IllegalArgumentException("Not a cached setting: " + setting);
+        }
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        Listener listener = (changed, value) -> {
+            if (changed == setting && value == target) {
+                future.complete(true);
+            }
+        };
+        Runnable timeout = () -> future.complete(false);
+        future.whenComplete((confirmed, error) -> {
+            removeListener(listener);
+            handler.removeCallbacks(timeout);
+        });
+
+        // Listen first, so a change that lands right now can't be missed
+        addListener(listener);
+        handler.postDelayed(timeout, timeoutMs);
+        Boolean current = getCachedValue(setting);
+        if (current != null && current == target) {
+            future.complete(true);
+        }
+        return future;
+    }
+
+    /**
+     * Like awaitState(), for a change that the cached value can't confirm. The check runs on the
+     * cache thread right away, after every change of the setting and once more at the timeout;
+     * the future completes with true as soon as it passes.
+     */
+    public CompletableFuture<Boolean> awaitCheck(Setting setting, BooleanSupplier check, long timeoutMs) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        Listener listener = (changed, value) -> {
+            if (changed == setting && check.getAsBoolean()) {
+                future.complete(true);
+            }
+        };
+        Runnable timeout = () -> future.complete(check.getAsBoolean());
+        future.whenComplete((confirmed, error) -> {
+            removeListener(listener);
+            handler.removeCallbacks(timeout);
+        });
+
+        addListener(listener);
+        handler.postDelayed(timeout, timeoutMs);
+        handler.post(() -> {
+            if (!future.isDone() && check.getAsBoolean()) {
+                future.complete(true);
+            }
+        });
+        return future;
+    }
+
+    private Boolean getCachedValue(Setting setting) {
+        switch (setting) {
+            case AIRPLANE_MODE:
+                return getAirplaneMode();
+            case MOBILE_NETWORK:
+                return getMobileData();
+            case WIFI:
+                return getWifi();
+            case BLUETOOTH:
+                return getBluetooth();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Build a snapshot straight from memory if every value is fresh, otherwise return null.
+     * Volumes aren't cached, the snapshot has none.
+     */
+    public DeviceStateSnapshot snapshotIfFresh() {
+        Boolean airplane = getAirplaneMode();
+        Boolean mobile = getMobileData();
+        Boolean wifiState = getWifi();
+        Boolean bluetoothState = getBluetooth();
+        if (airplane == null || mobile == null || wifiState == null || bluetoothState == null) {
+            return null;
+        }
+        return new DeviceStateSnapshot(airplane, mobile, wifiState, bluetoothState, null, 0, 0);
+    }
+
+    private static Boolean freshValue(Entry entry, boolean observed) {
+        if (!observed || entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - entry.updatedAt > MAX_AGE_MS) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    private final BroadcastReceiver systemReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (Intent.ACTION_AIRPLANE_MODE_CHANGED.equals(action)) {
+                putAirplaneMode(intent.getBooleanExtra("state", false));
+            } else if (WifiManager.WIFI_STATE_CHANGED_ACTION.equals(action)) {
+                int state = intent.getIntExtra(WifiManager.EXTRA_WIFI_STATE, WifiManager.WIFI_STATE_UNKNOWN);
+                if (state == WifiManager.WIFI_STATE_ENABLED) {
+                    putWifi(true);
+                } else if (state == WifiManager.WIFI_STATE_DISABLED) {
+                    putWifi(false);
+                } else {
+                    // Still switching, make the next check ask the system
+                    wifi = null;
+                }
+            }
+        }
+    };
+
+    private final BroadcastReceiver bluetoothReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR);
+            if (state == BluetoothAdapter.STATE_ON) {
+                putBluetooth(true);
+            } else if (state == BluetoothAdapter.STATE_OFF) {
+                putBluetooth(false);
+            } else {
+                bluetooth = null;
+            }
+        }
+    };
+
+    private void registerSystemReceiver() {
+        try {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_AIRPLANE_MODE_CHANGED);
+            filter.addAction(WifiManager.WIFI_STATE_CHANGED_ACTION);
+            context.registerReceiver(systemReceiver, filter, null, handler);
+            airplaneModeObserved = true;
+            wifiObserved = true;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to register system state receiver: " + e.getMessage(), e);
+        }
+    }
+
+    private void registerBluetoothReceiver() {
+        if (bluetoothReceiverRegistered) {
+            return;
+        }
+        // From Android 12 the state broadcast is only delivered with BLUETOOTH_CONNECT
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S &&
+                context.checkSelfPermission(Manifest.permission.BLUETOOTH_CONNECT)
+                        != PackageManager.PERMISSION_GRANTED) {
+            Log.d(TAG, "No BLUETOOTH_CONNECT permission, Bluetooth state will be probed directly");
+            return;
+        }
+        try {
+            context.registerReceiver(bluetoothReceiver,
+                    new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED), null, handler);
+            bluetoothReceiverRegistered = true;
+            bluetoothObserved = true;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to register Bluetooth state receiver: " + e.getMessage(), e);
+        }
+    }
+
+    private void registerSettingsObserver() {
+        try {
+            ContentObserver observer = new ContentObserver(handler) {
+                @Override
+                public void onChange(boolean selfChange, Uri uri) {
+                    putAirplaneMode(Settings.Global.getInt(context.getContentResolver(),
+                            Settings.Global.AIRPLANE_MODE_ON, 0) == 1);
+                }
+            };
+            context.getContentResolver().registerContentObserver(
+                    Settings.Global.getUriFor(Settings.Global.AIRPLANE_MODE_ON), false, observer);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to register settings observer: " + e.getMessage(), e);
+        }
+    }
+
+    private boolean registerSubscriptionReceiver() {
+        try {
+            context.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    observeMobileData();
+                }
+            }, new IntentFilter(ACTION_DEFAULT_DATA_SUBSCRIPTION_CHANGED), null, handler);
+            return true;
+        } catch (Exception e) {
+            // Without it a change of the data SIM would go unnoticed, so mobile data is never trusted
+            Log.e(TAG, "Failed to register data subscription receiver: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Observe the mobile data key of the SIM that currently carries data, on the cache thread.
+     * The per-subscription keys (mobile_data1, mobile_data2, ...) are separate settings, an observer
+     * on mobile_data doesn't see them. The cached value is only trusted while the key exists on
+     * this phone; phones that keep the switch elsewhere are probed every time instead.
+     */
+    private void observeMobileData() {
+        ContentResolver resolver = context.getContentResolver();
+        mobileDataObserved = false;
+        mobileData = null;
+        if (mobileDataObserver != null) {
+            resolver.unregisterContentObserver(mobileDataObserver);
+            mobileDataObserver = null;
+        }
+        try {
+            int subId = SubscriptionManager.getDefaultDataSubscriptionId();
+            String key = subId != SubscriptionManager.INVALID_SUBSCRIPTION_ID ? KEY_MOBILE_DATA + subId : KEY_MOBILE_DATA;
+            if (Settings.Global.getString(resolver, key) == null) {
+                Log.d(TAG, key + " not set on this phone, mobile data will be probed directly");
+                return;
+            }
+            mobileDataObserver = new ContentObserver(handler) {
+                @Override
+                public void onChange(boolean selfChange, Uri uri) {
+                    refreshMobileData();
+                }
+            };
+            resolver.registerContentObserver(Settings.Global.getUriFor(key), false, mobileDataObserver);
+            mobileDataObserved = true;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to observe mobile data: " + e.getMessage(), e);
+        }
+    }
+
+    private void registerNetworkCallback() {
+        // Some phones keep the data switch outside Settings.Global; the switch itself can't be
+        // observed there, but flipping it changes the networks, so read it again on those changes
+        try {
+            ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            cm.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    refreshMobileData();
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    refreshMobileData();
+                }
+            }, handler);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to register network callback: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read the mobile data switch again, on the cache thread. Which network is active doesn't tell.
+     */
+    private void refreshMobileData() {
+        Boolean enabled = MobileDataProbe.getInstance(context).probe();
+        if (enabled != null) {
+            putMobileData(enabled);
+        } else {
+            mobileData = null;
+        }
+    }
+}
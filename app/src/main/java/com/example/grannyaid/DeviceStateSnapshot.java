@@ -0,0 +1,239 @@
+package com.example.grannyaid;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Immutable view of the device state taken at the start of a fix.
+ * All probes run at the same time on the DeviceIo executor so the UI thread
+ * never waits on binder calls or reflection.
+ */
+public final class DeviceStateSnapshot {
+    private static final String TAG = "DeviceStateSnapshot";
+
+    // Each probe gets this long before we give up on it and use its fallback value
+    public static final long DEFAULT_PROBE_TIMEOUT_MS = 750;
+
+    // Bit flags for the probes that did not answer in time
+    public static final int PROBE_AIRPLANE_MODE = 1;
+    public static final int PROBE_MOBILE_DATA = 1 << 1;
+    public static final int PROBE_WIFI = 1 << 2;
+    public static final int PROBE_BLUETOOTH = 1 << 3;
+    public static final int PROBE_VOLUME = 1 << 4;
+
+    // Waits for the probes, kept apart so it never takes a DeviceIo thread
+    private static final ExecutorService collectExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "GrannyAid-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Receives the snapshot on the main thread
+     */
+    public interface Callback {
+        void onSnapshot(DeviceStateSnapshot snapshot);
+    }
+
+    private final boolean airplaneMode;
+    private final boolean mobileData;
+    private final boolean wifi;
+    private final boolean bluetooth;
+    private final int[] volumeIndices;
+    private final int timedOutProbes;
+    private final long captureTimeMs;
+
+    DeviceStateSnapshot(boolean airplaneMode, boolean mobileData, boolean wifi, boolean bluetooth,
+                        int[] volumeIndices, int timedOutProbes, long captureTimeMs) {
+        this.airplaneMode = airplaneMode;
+        this.mobileData = mobileData;
+        this.wifi = wifi;
+        this.bluetooth = bluetooth;
+        this.volumeIndices = volumeIndices != null ? volumeIndices.clone() : null;
+        this.timedOutProbes = timedOutProbes;
+        this.captureTimeMs = captureTimeMs;
+    }
+
+    public boolean isAirplaneModeEnabled() {
+        return airplaneMode;
+    }
+
+    public boolean isMobileDataEnabled() {
+        return mobileData;
+    }
+
+    public boolean isWifiEnabled() {
+        return wifi;
+    }
+
+    public boolean isBluetoothEnabled() {
+        return bluetooth;
+    }
+
+    /**
+     * Stream indices as read by VolumeEngine, or null if they couldn't be read
+     */
+    public int[] getVolumeIndices() {
+        return volumeIndices != null ? volumeIndices.clone() : null;
+    }
+
+    /**
+     * Copy of this snapshot with the given volume indices
+     */
+    DeviceStateSnapshot withVolumeIndices(int[] indices, long captureTimeMs) {
+        return new DeviceStateSnapshot(airplaneMode, mobileData, wifi, bluetooth, indices,
+                timedOutProbes, captureTimeMs);
+    }
+
+    /**
+     * Check if the given probe (one of the PROBE_* flags) ran out of time
+     */
+    public boolean hasTimedOut(int probe) {
+        return (timedOutProbes & probe) != 0;
+    }
+
+    /**
+     * How long the whole capture took, in milliseconds
+     */
+    public long getCaptureTimeMs() {
+        return captureTimeMs;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceStateSnapshot{airplaneMode=" + airplaneMode +
+                ", mobileData=" + mobileData +
+                ", wifi=" + wifi +
+                ", bluetooth=" + bluetooth +
+                ", volumes=" + Arrays.toString(volumeIndices) +
+                ", timedOut=0x" + Integer.toHexString(timedOutProbes) +
+                ", captureTimeMs=" + captureTimeMs + "}";
+    }
+
+    /**
+     * Snapshot in which every connectivity setting already matches the profile and the volumes
+     * are unknown, so a fix only runs the automatic batch. Used instead of probing in benchmark builds.
+     */
+    static DeviceStateSnapshot matchingProfile(SettingsManager.Profile profile) {
+        return new DeviceStateSnapshot(profile.getAirplaneMode(), profile.getMobileNetwork(), profile.getWifi(),
+                profile.getBluetooth(), null, PROBE_VOLUME, 0);
+    }
+
+    /**
+     * Run all probes concurrently and deliver the snapshot on the main thread
+     */
+    public static void capture(DeviceController deviceController, Callback callback) {
+        capture(deviceController, DEFAULT_PROBE_TIMEOUT_MS, callback);
+    }
+
+    public static void capture(DeviceController deviceController, long probeTimeoutMs,
+                               Callback callback) {
+        collectExecutor.execute(() -> {
+            // Only the volumes need reading when the cache already knows every other value
+            DeviceStateSnapshot cached = deviceController.cachedSnapshot();
+            DeviceStateSnapshot snapshot;
+            if (cached != null) {
+                long start = SystemClock.elapsedRealtime();
+                snapshot = cached.withVolumeIndices(deviceController.readVolumeIndices(),
+                        SystemClock.elapsedRealtime() - start);
+                Log.d(TAG, "Using cached " + snapshot);
+            } else {
+                snapshot = captureBlocking(deviceController, probeTimeoutMs);
+            }
+            mainHandler.post(() -> callback.onSnapshot(snapshot));
+        });
+    }
+
+    /**
+     * Run all probes concurrently and wait for them on the calling thread.
+     * Must not be called on the main thread.
+     */
+    public static DeviceStateSnapshot captureBlocking(DeviceController deviceController,
+                                                      long probeTimeoutMs) {
+        long start = SystemClock.elapsedRealtime();
+
+        // Start every probe before waiting on any of them, DeviceIo has a thread for each,
+        // probes for values the cache still knows return straight from memory
+        ExecutorService probeExecutor = DeviceIo.getExecutor();
+        Future<Boolean> airplaneFuture = probeExecutor.submit(deviceController::isAirplaneModeEnabled);
+        Future<Boolean> mobileDataFuture = probeExecutor.submit(deviceController::probeMobileDataEnabled);
+        Future<Boolean> wifiFuture = probeExecutor.submit(deviceController::isWifiEnabled);
+        Future<Boolean> bluetoothFuture = probeExecutor.submit(deviceController::isBluetoothEnabled);
+        Future<int[]> volumeFuture = probeExecutor.submit(deviceController::readVolumeIndices);
+
+        // All probes started together, so they share the same deadline
+        long deadline = start + probeTimeoutMs;
+        int timedOut = 0;
+
+        boolean airplaneMode = await(airplaneFuture, deadline, "airplane mode");
+        if (airplaneFuture.isCancelled()) timedOut |= PROBE_AIRPLANE_MODE;
+        boolean mobileData = await(mobileDataFuture, deadline, "mobile data");
+        if (mobileDataFuture.isCancelled()) timedOut |= PROBE_MOBILE_DATA;
+        boolean wifi = await(wifiFuture, deadline, "WiFi");
+        if (wifiFuture.isCancelled()) timedOut |= PROBE_WIFI;
+        boolean bluetooth = await(bluetoothFuture, deadline, "Bluetooth");
+        if (bluetoothFuture.isCancelled()) timedOut |= PROBE_BLUETOOTH;
+        int[] volumeIndices = awaitVolumes(volumeFuture, deadline);
+        if (volumeFuture.isCancelled()) timedOut |= PROBE_VOLUME;
+
+        DeviceStateSnapshot snapshot = new DeviceStateSnapshot(airplaneMode, mobileData, wifi, bluetooth,
+                volumeIndices, timedOut, SystemClock.elapsedRealtime() - start);
+        Log.d(TAG, "Captured " + snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Wait for the volume read until the shared deadline, null if it didn't make it
+     */
+    private static int[] awaitVolumes(Future<int[]> future, long deadline) {
+        try {
+            long remaining = Math.max(0, deadline - SystemClock.elapsedRealtime());
+            return future.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            Log.w(TAG, "Probe for volumes timed out");
+            return null;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            Log.e(TAG, "Probe for volumes failed: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Wait for a probe until the shared deadline. A probe that fails or runs out of time
+     * reports false, the same as the individual DeviceSettingsManager checks do on error.
+     */
+    private static boolean await(Future<Boolean> future, long deadline, String name) {
+        try {
+            long remaining = Math.max(0, deadline - SystemClock.elapsedRealtime());
+            Boolean result = future.get(remaining, TimeUnit.MILLISECONDS);
+            return result != null && result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            Log.w(TAG, "Probe for " + name + " timed out");
+            return false;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            Log.e(TAG, "Probe for " + name + " failed: " + e.getMessage(), e);
+            return false;
+        }
+    }
+}
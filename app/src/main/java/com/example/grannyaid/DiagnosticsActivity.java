@@ -0,0 +1,108 @@
+package com.example.grannyaid;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Hidden screen for caregivers and developers, reached by long-pressing the title in Settings.
+ * Shows percentiles of every fix step from FixMetrics and exports them as JSON.
+ */
+public class DiagnosticsActivity extends AppCompatActivity {
+    private static final int REQUEST_EXPORT = 3001;
+
+    private TextView metricsText;
+    private FixMetrics.Report report;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+
+        metricsText = findViewById(R.id.metricsText);
+        Button exportButton = findViewById(R.id.exportMetricsButton);
+        Button clearButton = findViewById(R.id.clearMetricsButton);
+
+        exportButton.setOnClickListener(v -> exportMetrics());
+        clearButton.setOnClickListener(v -> {
+            FixMetrics.getInstance(this).clear();
+            loadMetrics();
+        });
+
+        loadMetrics();
+    }
+
+    private void loadMetrics() {
+        FixMetrics.getInstance(this).loadReport(loaded -> {
+            report = loaded;
+            if (isFinishing() || isDestroyed()) {
+                return;
+            }
+            metricsText.setText(format(loaded));
+        });
+    }
+
+    private String format(FixMetrics.Report report) {
+        if (report.getSummaries().isEmpty() && report.getMilestones().isEmpty()) {
+            return getString(R.string.diagnostics_no_data);
+        }
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT,
+                "%-26s %5s %6s %6s %6s %6s%n", "step (ms)", "n", "p50", "p90", "p99", "max"));
+        appendRows(text, report.getSummaries());
+        if (!report.getMilestones().isEmpty()) {
+            // Reached after this long since the tap, not durations
+            text.append(String.format(Locale.ROOT,
+                    "%n%-26s %5s %6s %6s %6s %6s%n", "reached at (ms)", "n", "p50", "p90", "p99", "max"));
+            appendRows(text, report.getMilestones());
+        }
+        return text.toString();
+    }
+
+    private static void appendRows(StringBuilder text, List<FixMetrics.Summary> summaries) {
+        for (FixMetrics.Summary summary : summaries) {
+            text.append(String.format(Locale.ROOT, "%-26s %5d %6d %6d %6d %6d%n",
+                    summary.name, summary.count, summary.p50, summary.p90, summary.p99, summary.max));
+        }
+    }
+
+    private void exportMetrics() {
+        if (report == null) {
+            return;
+        }
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT)
+                .addCategory(Intent.CATEGORY_OPENABLE)
+                .setType("application/json")
+                .putExtra(Intent.EXTRA_TITLE, "grannyaid-metrics.json");
+        startActivityForResult(intent, REQUEST_EXPORT);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQUEST_EXPORT && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            writeReport(data.getData());
+        }
+    }
+
+    private void writeReport(Uri uri) {
+        FixMetrics.Report toWrite = report;
+        DeviceIo.run(() -> {
+            try (OutputStream out = getContentResolver().openOutputStream(uri)) {
+                out.write(toWrite.toJson().toString(2).getBytes(StandardCharsets.UTF_8));
+                return true;
+            }
+        }, false, exported -> Toast.makeText(this, exported ?
+                R.string.diagnostics_exported : R.string.diagnostics_export_failed, Toast.LENGTH_SHORT).show());
+    }
+}
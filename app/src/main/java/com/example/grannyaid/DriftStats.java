@@ -0,0 +1,180 @@
+package com.example.grannyaid;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.TimeZone;
+
+/**
+ * Running totals over every drift and fix event, for the caregiver report.
+ * Each event updates a handful of counters in constant time and without allocating,
+ * so the report never has to go through the event history. EventLog keeps one instance
+ * on its thread and saves it with every change; the report gets a copy.
+ *
+ * Per setting: how often it drifted, split into four times of day, how many fixes ran on each
+ * path and how many of those worked, and how long successful fixes took, in TIME_BUCKET_BOUNDS_MS.
+ */
+public final class DriftStats {
+    private static final int MAGIC = 0x47414453; // "GADS"
+    private static final int FORMAT_VERSION = 1;
+
+    // Night 0-6, morning 6-12, afternoon 12-18, evening 18-24
+    public static final int TIMES_OF_DAY = 4;
+    private static final long HOURS_PER_TIME_OF_DAY = 24 / TIMES_OF_DAY;
+
+    // Fix paths as EventLog.PATH_*, index 0 is unused
+    public static final int PATHS = EventLog.PATH_WATCHDOG + 1;
+
+    // Upper bounds of the time-to-fix buckets; the last bucket has none
+    public static final long[] TIME_BUCKET_BOUNDS_MS = {5_000, 30_000, 2 * 60_000, 10 * 60_000};
+    public static final int TIME_BUCKETS = TIME_BUCKET_BOUNDS_MS.length + 1;
+
+    private static final int SETTINGS = Setting.values().length;
+
+    private final int[] drifts = new int[SETTINGS];
+    private final int[][] driftsByTimeOfDay = new int[SETTINGS][TIMES_OF_DAY];
+    private final int[][] fixes = new int[SETTINGS][PATHS];
+    private final int[][] fixed = new int[SETTINGS][PATHS];
+    private final int[][] fixTimes = new int[SETTINGS][TIME_BUCKETS];
+    private long firstEventAt = 0;
+
+    DriftStats() {
+    }
+
+    /**
+     * Count one event, see EventLog for the meaning of the values
+     */
+    void add(long timeMs, int type, Setting setting, int path, int outcome, long durationMs) {
+        if (firstEventAt == 0) {
+            firstEventAt = timeMs;
+        }
+        int index = setting.ordinal();
+        if (type == EventLog.TYPE_DRIFT) {
+            drifts[index]++;
+            driftsByTimeOfDay[index][timeOfDay(timeMs)]++;
+        } else if (type == EventLog.TYPE_FIX && path > 0 && path < PATHS) {
+            fixes[index][path]++;
+            if (outcome == EventLog.OUTCOME_FIXED) {
+                fixed[index][path]++;
+                if (durationMs >= 0) {
+                    fixTimes[index][timeBucket(durationMs)]++;
+                }
+            }
+        }
+    }
+
+    private static int timeOfDay(long timeMs) {
+        long localMs = timeMs + TimeZone.getDefault().getOffset(timeMs);
+        long hour = Math.floorMod(localMs / (60 * 60 * 1000), 24);
+        return (int) (hour / HOURS_PER_TIME_OF_DAY);
+    }
+
+    private static int timeBucket(long durationMs) {
+        for (int i = 0; i < TIME_BUCKET_BOUNDS_MS.length; i++) {
+            if (durationMs < TIME_BUCKET_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return TIME_BUCKETS - 1;
+    }
+
+    public int getDrifts(Setting setting) {
+        return drifts[setting.ordinal()];
+    }
+
+    public int getDrifts(Setting setting, int timeOfDay) {
+        return driftsByTimeOfDay[setting.ordinal()][timeOfDay];
+    }
+
+    public int getFixes(Setting setting, int path) {
+        return fixes[setting.ordinal()][path];
+    }
+
+    public int getFixed(Setting setting, int path) {
+        return fixed[setting.ordinal()][path];
+    }
+
+    public int getFixTimes(Setting setting, int bucket) {
+        return fixTimes[setting.ordinal()][bucket];
+    }
+
+    /**
+     * Wall clock time of the first event counted, 0 if there was none
+     */
+    public long getFirstEventAt() {
+        return firstEventAt;
+    }
+
+    public boolean isEmpty() {
+        return firstEventAt == 0;
+    }
+
+    DriftStats copy() {
+        DriftStats copy = new DriftStats();
+        copy.firstEventAt = firstEventAt;
+        System.arraycopy(drifts, 0, copy.drifts, 0, SETTINGS);
+        for (int i = 0; i < SETTINGS; i++) {
+            System.arraycopy(driftsByTimeOfDay[i], 0, copy.driftsByTimeOfDay[i], 0, TIMES_OF_DAY);
+            System.arraycopy(fixes[i], 0, copy.fixes[i], 0, PATHS);
+            System.arraycopy(fixed[i], 0, copy.fixed[i], 0, PATHS);
+            System.arraycopy(fixTimes[i], 0, copy.fixTimes[i], 0, TIME_BUCKETS);
+        }
+        return copy;
+    }
+
+    /**
+     * Big-endian: magic, format version, the table dimensions, the first event time,
+     * then every counter as an int
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeByte(SETTINGS);
+        out.writeByte(TIMES_OF_DAY);
+        out.writeByte(PATHS);
+        out.writeByte(TIME_BUCKETS);
+        out.writeLong(firstEventAt);
+        for (int i = 0; i < SETTINGS; i++) {
+            out.writeInt(drifts[i]);
+            writeInts(out, driftsByTimeOfDay[i]);
+            writeInts(out, fixes[i]);
+            writeInts(out, fixed[i]);
+            writeInts(out, fixTimes[i]);
+        }
+    }
+
+    /**
+     * @throws IOException if the data is damaged or was written with other dimensions
+     */
+    static DriftStats read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Not a stats file");
+        }
+        if (in.readUnsignedByte() != SETTINGS || in.readUnsignedByte() != TIMES_OF_DAY ||
+                in.readUnsignedByte() != PATHS || in.readUnsignedByte() != TIME_BUCKETS) {
+            throw new IOException("Stats were written with other dimensions");
+        }
+        DriftStats stats = new DriftStats();
+        stats.firstEventAt = in.readLong();
+        for (int i = 0; i < SETTINGS; i++) {
+            stats.drifts[i] = in.readInt();
+            readInts(in, stats.driftsByTimeOfDay[i]);
+            readInts(in, stats.fixes[i]);
+            readInts(in, stats.fixed[i]);
+            readInts(in, stats.fixTimes[i]);
+        }
+        return stats;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void readInts(DataInputStream in, int[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.grannyaid;
+
+import android.Manifest;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.bluetooth.BluetoothAdapter;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
+
+/**
+ * Restores the settings that need no user interaction (volumes, Bluetooth and, before Android 10, WiFi)
+ * as soon as they drift, without the app being opened.
+ *
+ * Nothing is polled. While the process is alive, registered receivers react to the volume,
+ * Bluetooth and WiFi broadcasts. Otherwise a JobScheduler job with content triggers on the
+ * matching settings wakes the app; it is re-armed after every run and after a reboot.
+ * A small budget caps how often it may run, so it costs almost no battery and never
+ * fights a user who keeps changing a setting on purpose.
+ */
+public final class DriftWatchdog {
+    private static final String TAG = "DriftWatchdog";
+
+    static final int JOB_ID_TRIGGER = 2001;
+    static final int JOB_ID_REARM = 2002;
+
+    // Hidden AudioManager broadcast, sent whenever a stream volume changes
+    private static final String ACTION_VOLUME_CHANGED = "android.media.VOLUME_CHANGED_ACTION";
+
+    // Settings.System keys AudioService keeps the managed stream volumes in: the plain key on
+    // older releases, one key per output device (e.g. volume_music_speaker) on newer ones.
+    // Content triggers match whole path segments, so every key is listed
+    private static final String[] VOLUME_KEYS = {"volume_music", "volume_ring", "volume_notification",
+            "volume_alarm", "volume_voice"};
+    private static final String[] VOLUME_DEVICE_SUFFIXES = {"", "_speaker", "_earpiece"};
+
+    // Wait for the user to stop pressing volume keys before checking
+    private static final long DEBOUNCE_MS = 2000;
+    private static final long TRIGGER_UPDATE_DELAY_MS = 2000;
+    private static final long TRIGGER_MAX_DELAY_MS = 10000;
+
+    // At most this many runs per budget window
+    private static final int MAX_RUNS_PER_WINDOW = 12;
+    private static final long BUDGET_WINDOW_MS = 60 * 60 * 1000;
+
+    private static final String PREFS_NAME = "GrannyAidWatchdog";
+    private static final String KEY_WINDOW_START = "window_start";
+    private static final String KEY_RUN_COUNT = "run_count";
+
+    // Identifies the pending debounced check so the next broadcast can replace it
+    private static final Object DEBOUNCE_TOKEN = new Object();
+
+    private static Handler handler;
+    private static BroadcastReceiver receiver;
+
+    private DriftWatchdog() {
+    }
+
+    /**
+     * Start or stop watching to match the saved profile. Safe to call repeatedly.
+     */
+    public static void arm(Context context) {
+        Context appContext = context.getApplicationContext();
+        getHandler().post(() -> {
+            if (new SettingsManager(appContext).getProfile().getAutoFix()) {
+                registerReceivers(appContext);
+                scheduleTriggerJob(appContext);
+            } else {
+                disarm(appContext);
+            }
+        });
+    }
+
+    private static synchronized Handler getHandler() {
+        if (handler == null) {
+            HandlerThread thread = new HandlerThread("GrannyAid-watchdog");
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        return handler;
+    }
+
+    private static void disarm(Context context) {
+        JobScheduler jobScheduler = context.getSystemService(JobScheduler.class);
+        jobScheduler.cancel(JOB_ID_TRIGGER);
+        jobScheduler.cancel(JOB_ID_REARM);
+        synchronized (DriftWatchdog.class) {
+            if (receiver != null) {
+                context.unregisterReceiver(receiver);
+                receiver = null;
+            }
+        }
+        Log.d(TAG, "Watchdog disarmed");
+    }
+
+    private static synchronized void registerReceivers(Context context) {
+        if (receiver != null) {
+            return;
+        }
+        receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                // Collapse a burst of changes into a single check. The process is already awake,
+                // so only checks that actually restore something count against the budget.
+                getHandler().removeCallbacksAndMessages(DEBOUNCE_TOKEN);
+                getHandler().postAtTime(() -> {
+                    if (hasBudget(context) && correctDrift(context)) {
+                        tryConsumeBudget(context);
+                    }
+                }, DEBOUNCE_TOKEN, SystemClock.uptimeMillis() + DEBOUNCE_MS);
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(ACTION_VOLUME_CHANGED);
+        filter.addAction(BluetoothAdapter.ACTION_STATE_CHANGED);
+        filter.addAction(WifiManager.WIFI_STATE_CHANGED_ACTION);
+        try {
+            context.registerReceiver(receiver, filter, null, getHandler());
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to register watchdog receiver: " + e.getMessage(), e);
+            receiver = null;
+        }
+    }
+
+    /**
+     * Schedule the one-shot job that runs when any watched setting changes.
+     * Only the keys the watchdog restores wake it, not brightness, timeouts and the rest of Settings.System.
+     */
+    static void scheduleTriggerJob(Context context) {
+        try {
+            JobInfo.Builder builder = new JobInfo.Builder(JOB_ID_TRIGGER,
+                    new ComponentName(context, DriftWatchdogService.class));
+            for (String key : VOLUME_KEYS) {
+                for (String suffix : VOLUME_DEVICE_SUFFIXES) {
+                    builder.addTriggerContentUri(new JobInfo.TriggerContentUri(
+                            Settings.System.getUriFor(key + suffix), 0));
+                }
+            }
+            JobInfo job = builder
+                    .addTriggerContentUri(new JobInfo.TriggerContentUri(
+                            Settings.Global.getUriFor(Settings.Global.BLUETOOTH_ON), 0))
+                    .addTriggerContentUri(new JobInfo.TriggerContentUri(
+                            Settings.Global.getUriFor(Settings.Global.WIFI_ON), 0))
+                    .setTriggerContentUpdateDelay(TRIGGER_UPDATE_DELAY_MS)
+                    .setTriggerContentMaxDelay(TRIGGER_MAX_DELAY_MS)
+                    .build();
+            context.getSystemService(JobScheduler.class).schedule(job);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to schedule watchdog job: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Once the budget is used up, stop listening and only come back when the window ends
+     */
+    static void scheduleRearmJob(Context context) {
+        long waitMs = Math.max(0, getWindowStart(context) + BUDGET_WINDOW_MS - System.currentTimeMillis());
+        try {
+            JobInfo job = new JobInfo.Builder(JOB_ID_REARM, new ComponentName(context, DriftWatchdogService.class))
+                    .setMinimumLatency(waitMs)
+                    .setOverrideDeadline(waitMs + BUDGET_WINDOW_MS)
+                    .setPersisted(true)
+                    .build();
+            context.getSystemService(JobScheduler.class).schedule(job);
+            Log.d(TAG, "Watchdog budget used up, re-arming in " + waitMs + "ms");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to schedule watchdog re-arm job: " + e.getMessage(), e);
+        }
+    }
+
+    static boolean hasBudget(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        long windowStart = preferences.getLong(KEY_WINDOW_START, 0);
+        return now - windowStart > BUDGET_WINDOW_MS || now < windowStart ||
+                preferences.getInt(KEY_RUN_COUNT, 0) < MAX_RUNS_PER_WINDOW;
+    }
+
+    /**
+     * Count one run against the budget. Returns false if the budget for this window is used up.
+     */
+    static synchronized boolean tryConsumeBudget(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        long windowStart = preferences.getLong(KEY_WINDOW_START, 0);
+        int runs = preferences.getInt(KEY_RUN_COUNT, 0);
+        if (now - windowStart > BUDGET_WINDOW_MS || now < windowStart) {
+            windowStart = now;
+            runs = 0;
+        }
+        if (runs >= MAX_RUNS_PER_WINDOW) {
+            return false;
+        }
+        preferences.edit()
+                .putLong(KEY_WINDOW_START, windowStart)
+                .putInt(KEY_RUN_COUNT, runs + 1)
+                .apply();
+        return true;
+    }
+
+    private static long getWindowStart(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getLong(KEY_WINDOW_START, 0);
+    }
+
+    /**
+     * Put every automatic setting back to the saved profile, writing only what actually drifted.
+     * Runs on a background thread. Returns true if any write was accepted, only those runs use up the budget.
+     */
+    static boolean correctDrift(Context context) {
+        SettingsManager.Profile profile = new SettingsManager(context).getProfile();
+        if (!profile.getAutoFix()) {
+            return false;
+        }
+        boolean corrected = false;
+        EventLog eventLog = EventLog.getInstance(context);
+
+        DeviceSettingsManager deviceSettingsManager = new DeviceSettingsManager(context);
+        if (!deviceSettingsManager.isSoundVolumeSet(profile.getSoundVolume())) {
+            Log.i(TAG, "Sound volume drifted, restoring");
+            long start = SystemClock.elapsedRealtime();
+            boolean fixed = deviceSettingsManager.setSoundVolume(profile.getSoundVolume());
+            logCorrection(eventLog, Setting.SOUND_VOLUME, profile, fixed, start);
+            corrected |= fixed;
+        }
+        if (!deviceSettingsManager.isEarpieceVolumeSet(profile.getEarpieceVolume())) {
+            Log.i(TAG, "Earpiece volume drifted, restoring");
+            long start = SystemClock.elapsedRealtime();
+            boolean fixed = deviceSettingsManager.setEarpieceVolume(profile.getEarpieceVolume());
+            logCorrection(eventLog, Setting.EARPIECE_VOLUME, profile, fixed, start);
+            corrected |= fixed;
+        }
+
+        // On Android 13 (T) and above only a Device Owner may switch Bluetooth, and from 12 it needs BLUETOOTH_CONNECT
+        boolean canControlBluetooth = deviceSettingsManager.canSetBluetoothDirectly() &&
+                (Build.VERSION.SDK_INT < Build.VERSION_CODES.S ||
+                        context.checkSelfPermission(Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED);
+        if (canControlBluetooth && deviceSettingsManager.isBluetoothEnabled() != profile.getBluetooth()) {
+            Log.i(TAG, "Bluetooth drifted, restoring");
+            long start = SystemClock.elapsedRealtime();
+            boolean fixed = deviceSettingsManager.setBluetooth(profile.getBluetooth());
+            logCorrection(eventLog, Setting.BLUETOOTH, profile, fixed, start);
+            corrected |= fixed;
+        }
+
+        // On Android 10 (Q) and above WiFi can only be changed by the user, unless the app is Device Owner
+        if (deviceSettingsManager.canSetWifiDirectly() &&
+                deviceSettingsManager.isWifiEnabled() != profile.getWifi()) {
+            Log.i(TAG, "WiFi drifted, restoring");
+            long start = SystemClock.elapsedRealtime();
+            boolean fixed = deviceSettingsManager.setWifi(profile.getWifi());
+            logCorrection(eventLog, Setting.WIFI, profile, fixed, start);
+            corrected |= fixed;
+        }
+        return corrected;
+    }
+
+    private static void logCorrection(EventLog eventLog, Setting setting, SettingsManager.Profile profile,
+                                      boolean fixed, long startMs) {
+        int before = EventLog.driftedValue(setting, profile);
+        eventLog.recordDrift(setting, before, EventLog.profileValue(setting, profile));
+        eventLog.recordFix(setting, EventLog.PATH_WATCHDOG, fixed,
+                before, fixed ? EventLog.profileValue(setting, profile) : before,
+                SystemClock.elapsedRealtime() - startMs);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.grannyaid;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.util.Log;
+
+/**
+ * Woken by JobScheduler when a watched setting changes, or when the watchdog budget window ends
+ */
+public class DriftWatchdogService extends JobService {
+    private static final String TAG = "DriftWatchdogService";
+
+    private Thread worker;
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        worker = new Thread(() -> {
+            try {
+                if (params.getJobId() == DriftWatchdog.JOB_ID_REARM) {
+                    Log.d(TAG, "Budget window over, watching again");
+                    DriftWatchdog.scheduleTriggerJob(this);
+                } else if (DriftWatchdog.hasBudget(this)) {
+                    // As for the receiver, only runs that restore something count against the budget;
+                    // the app's own writes and changes that are already undone wake the job for nothing
+                    if (DriftWatchdog.correctDrift(this)) {
+                        DriftWatchdog.tryConsumeBudget(this);
+                    }
+                    // Content trigger jobs fire once, schedule the next one
+                    DriftWatchdog.scheduleTriggerJob(this);
+                } else {
+                    DriftWatchdog.scheduleRearmJob(this);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Watchdog run failed: " + e.getMessage(), e);
+            } finally {
+                jobFinished(params, false);
+            }
+        }, "GrannyAid-watchdog-job");
+        worker.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (worker != null) {
+            worker.interrupt();
+        }
+        return false;
+    }
+}
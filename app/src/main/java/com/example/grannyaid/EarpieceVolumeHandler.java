@@ -0,0 +1,37 @@
+package com.example.grannyaid;
+
+public class EarpieceVolumeHandler implements SettingHandler {
+    private final DeviceController deviceController;
+
+    public EarpieceVolumeHandler(DeviceController deviceController) {
+        this.deviceController = deviceController;
+    }
+
+    @Override
+    public Setting getSetting() {
+        return Setting.EARPIECE_VOLUME;
+    }
+
+    @Override
+    public boolean probe(SettingsManager.Profile profile, DeviceStateSnapshot snapshot) {
+        // If the volumes couldn't be read in time, apply anyway; it only writes streams that differ
+        return !deviceController.isVolumeSet(Setting.EARPIECE_VOLUME, profile.getEarpieceVolume(),
+                snapshot.getVolumeIndices());
+    }
+
+    @Override
+    public boolean isAutomatic() {
+        return true;
+    }
+
+    @Override
+    public boolean apply(SettingsManager.Profile profile) {
+        return deviceController.setEarpieceVolume(profile.getEarpieceVolume());
+    }
+
+    @Override
+    public boolean verify(SettingsManager.Profile profile) {
+        return deviceController.isVolumeSet(Setting.EARPIECE_VOLUME, profile.getEarpieceVolume(),
+                deviceController.readVolumeIndices());
+    }
+}
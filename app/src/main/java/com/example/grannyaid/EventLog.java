@@ -0,0 +1,366 @@
+package com.example.grannyaid;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * History of what drifted and how each fix went, so caregivers can spot patterns
+ * such as WiFi being turned off every evening.
+ *
+ * The log is a ring of CAPACITY fixed-width records in a file that is created at its full
+ * size and memory-mapped, so it never grows however long the phone runs; the oldest record
+ * is simply overwritten. Callers only take the time and hand the values to one background
+ * thread, which writes the record into the mapping and then advances the sequence in the header.
+ * A record cut short by the process dying is recognised by its sequence number and skipped.
+ * Mapped pages are written back by the kernel, so only a power loss can drop the last events.
+ *
+ * File layout, big-endian: a 32 byte header (magic, format version, record size, capacity,
+ * next sequence number) followed by the records. A record holds the wall clock time,
+ * the low bits of its sequence number plus one (0 marks an empty slot), type, setting,
+ * fix path, outcome, value before, value after and the time the fix took.
+ *
+ * Every event also updates the running DriftStats, which are saved to a small file of their
+ * own, so the report opens without going through the records.
+ */
+public final class EventLog {
+    private static final String TAG = "EventLog";
+
+    private static final String FILE_NAME = "events.bin";
+    private static final String STATS_FILE_NAME = "drift_stats.bin";
+    private static final int MAGIC = 0x47414556; // "GAEV"
+    private static final int FORMAT_VERSION = 1;
+
+    static final int CAPACITY = 4096;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 24;
+
+    private static final int HEADER_NEXT_SEQUENCE = 16;
+
+    private static final int RECORD_TIME = 0;
+    private static final int RECORD_SEQUENCE = 8;
+    private static final int RECORD_TYPE = 12;
+    private static final int RECORD_SETTING = 13;
+    private static final int RECORD_PATH = 14;
+    private static final int RECORD_OUTCOME = 15;
+    private static final int RECORD_BEFORE = 16;
+    private static final int RECORD_AFTER = 18;
+    private static final int RECORD_DURATION = 20;
+
+    // Event types
+    public static final int TYPE_DRIFT = 1;
+    public static final int TYPE_FIX = 2;
+
+    // How a setting was fixed
+    public static final int PATH_NONE = 0;
+    public static final int PATH_AUTOMATIC = 1;
+    public static final int PATH_GUIDED = 2;
+    public static final int PATH_WATCHDOG = 3;
+
+    public static final int OUTCOME_NONE = 0;
+    public static final int OUTCOME_FIXED = 1;
+    public static final int OUTCOME_NOT_FIXED = 2;
+
+    // Values are 0 or 1 for the connectivity settings and a percentage for the volumes
+    public static final int VALUE_UNKNOWN = -1;
+
+    private static final Setting[] SETTINGS = Setting.values();
+
+    private static EventLog instance;
+
+    /**
+     * One record read back from the log
+     */
+    public static final class Event {
+        public final long timeMs;
+        public final int type;
+        public final Setting setting;
+        public final int path;
+        public final int outcome;
+        public final int before;
+        public final int after;
+        // -1 if unknown
+        public final long durationMs;
+
+        Event(long timeMs, int type, Setting setting, int path, int outcome, int before, int after,
+              long durationMs) {
+            this.timeMs = timeMs;
+            this.type = type;
+            this.setting = setting;
+            this.path = path;
+            this.outcome = outcome;
+            this.before = before;
+            this.after = after;
+            this.durationMs = durationMs;
+        }
+    }
+
+    private final File file;
+    private final AtomicFile statsFile;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "GrannyAid-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Only touched on the executor
+    private MappedByteBuffer buffer;
+    private long nextSequence;
+    private boolean opened = false;
+    private DriftStats stats;
+    private boolean statsSaveQueued = false;
+
+    public static synchronized EventLog getInstance(Context context) {
+        if (instance == null) {
+            instance = new EventLog(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private EventLog(Context context) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        this.statsFile = new AtomicFile(new File(context.getFilesDir(), STATS_FILE_NAME));
+    }
+
+    /**
+     * A setting was found to differ from the profile
+     */
+    public void recordDrift(Setting setting, int before, int target) {
+        append(TYPE_DRIFT, setting, PATH_NONE, OUTCOME_NONE, before, target, -1);
+    }
+
+    /**
+     * A fix of the setting ended, durationMs counts from the drift being noticed
+     */
+    public void recordFix(Setting setting, int path, boolean fixed, int before, int after, long durationMs) {
+        append(TYPE_FIX, setting, path, fixed ? OUTCOME_FIXED : OUTCOME_NOT_FIXED, before, after, durationMs);
+    }
+
+    private void append(int type, Setting setting, int path, int outcome, int before, int after,
+                        long durationMs) {
+        long timeMs = System.currentTimeMillis();
+        executor.execute(() -> {
+            ensureStatsLoaded();
+            stats.add(timeMs, type, setting, path, outcome, durationMs);
+            scheduleStatsSave();
+            if (!ensureOpen()) {
+                return;
+            }
+            int offset = HEADER_SIZE + (int) (nextSequence % CAPACITY) * RECORD_SIZE;
+            // Clear the sequence first, so a half-written record is never taken for a complete one
+            buffer.putInt(offset + RECORD_SEQUENCE, 0);
+            buffer.putLong(offset + RECORD_TIME, timeMs);
+            buffer.put(offset + RECORD_TYPE, (byte) type);
+            buffer.put(offset + RECORD_SETTING, (byte) setting.ordinal());
+            buffer.put(offset + RECORD_PATH, (byte) path);
+            buffer.put(offset + RECORD_OUTCOME, (byte) outcome);
+            buffer.putShort(offset + RECORD_BEFORE, (short) before);
+            buffer.putShort(offset + RECORD_AFTER, (short) after);
+            buffer.putInt(offset + RECORD_DURATION, (int) Math.min(Integer.MAX_VALUE, durationMs));
+            buffer.putInt(offset + RECORD_SEQUENCE, (int) nextSequence + 1);
+            nextSequence++;
+            buffer.putLong(HEADER_NEXT_SEQUENCE, nextSequence);
+        });
+    }
+
+    /**
+     * Read every stored event, oldest first, delivered on the main thread
+     */
+    public void read(DeviceIo.Callback<List<Event>> callback) {
+        executor.execute(() -> {
+            List<Event> events = readAll();
+            DeviceIo.postToMain(() -> callback.onResult(events));
+        });
+    }
+
+    /**
+     * Copy of the running statistics, delivered on the main thread
+     */
+    public void loadStats(DeviceIo.Callback<DriftStats> callback) {
+        executor.execute(() -> {
+            ensureStatsLoaded();
+            DriftStats copy = stats.copy();
+            DeviceIo.postToMain(() -> callback.onResult(copy));
+        });
+    }
+
+    private List<Event> readAll() {
+        if (!ensureOpen()) {
+            return Collections.emptyList();
+        }
+        long first = Math.max(0, nextSequence - CAPACITY);
+        List<Event> events = new ArrayList<>((int) (nextSequence - first));
+        for (long sequence = first; sequence < nextSequence; sequence++) {
+            int offset = HEADER_SIZE + (int) (sequence % CAPACITY) * RECORD_SIZE;
+            if (buffer.getInt(offset + RECORD_SEQUENCE) != (int) sequence + 1) {
+                continue;
+            }
+            int settingOrdinal = buffer.get(offset + RECORD_SETTING);
+            if (settingOrdinal < 0 || settingOrdinal >= SETTINGS.length) {
+                continue;
+            }
+            events.add(new Event(
+                    buffer.getLong(offset + RECORD_TIME),
+                    buffer.get(offset + RECORD_TYPE),
+                    SETTINGS[settingOrdinal],
+                    buffer.get(offset + RECORD_PATH),
+                    buffer.get(offset + RECORD_OUTCOME),
+                    buffer.getShort(offset + RECORD_BEFORE),
+                    buffer.getShort(offset + RECORD_AFTER),
+                    buffer.getInt(offset + RECORD_DURATION)));
+        }
+        return events;
+    }
+
+    public void clear() {
+        executor.execute(() -> {
+            if (!ensureOpen()) {
+                return;
+            }
+            for (int offset = HEADER_SIZE; offset < buffer.capacity(); offset += RECORD_SIZE) {
+                buffer.putInt(offset + RECORD_SEQUENCE, 0);
+            }
+            nextSequence = 0;
+            buffer.putLong(HEADER_NEXT_SEQUENCE, 0);
+            stats = new DriftStats();
+            scheduleStatsSave();
+        });
+    }
+
+    private void ensureStatsLoaded() {
+        if (stats != null) {
+            return;
+        }
+        // openRead() also rolls back a write that was cut short
+        try (DataInputStream in = new DataInputStream(statsFile.openRead())) {
+            stats = DriftStats.read(in);
+            return;
+        } catch (FileNotFoundException e) {
+            // First start with statistics, count what the log already holds
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read drift statistics, counting again: " + e.getMessage(), e);
+        }
+        stats = new DriftStats();
+        for (Event event : readAll()) {
+            stats.add(event.timeMs, event.type, event.setting, event.path, event.outcome, event.durationMs);
+        }
+        scheduleStatsSave();
+    }
+
+    /**
+     * Save the statistics once the events queued right now are counted, a burst costs one write
+     */
+    private void scheduleStatsSave() {
+        if (statsSaveQueued) {
+            return;
+        }
+        statsSaveQueued = true;
+        executor.execute(() -> {
+            statsSaveQueued = false;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            FileOutputStream out = null;
+            try {
+                try (DataOutputStream data = new DataOutputStream(bytes)) {
+                    stats.write(data);
+                }
+                out = statsFile.startWrite();
+                out.write(bytes.toByteArray());
+                statsFile.finishWrite(out);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to save drift statistics: " + e.getMessage(), e);
+                if (out != null) {
+                    statsFile.failWrite(out);
+                }
+            }
+        });
+    }
+
+    /**
+     * Map the file on first use, creating it at its full size if needed
+     */
+    private boolean ensureOpen() {
+        if (opened) {
+            return buffer != null;
+        }
+        opened = true;
+        int size = HEADER_SIZE + CAPACITY * RECORD_SIZE;
+        // The mapping stays valid after the channel is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean fresh = raf.length() != size;
+            if (fresh) {
+                raf.setLength(0);
+                raf.setLength(size);
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION ||
+                    buffer.getInt(8) != RECORD_SIZE || buffer.getInt(12) != CAPACITY) {
+                if (!fresh) {
+                    Log.w(TAG, "Unknown event log format, starting over");
+                    for (int i = 0; i < size; i += 4) {
+                        buffer.putInt(i, 0);
+                    }
+                }
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, FORMAT_VERSION);
+                buffer.putInt(8, RECORD_SIZE);
+                buffer.putInt(12, CAPACITY);
+                buffer.putLong(HEADER_NEXT_SEQUENCE, 0);
+            }
+            nextSequence = Math.max(0, buffer.getLong(HEADER_NEXT_SEQUENCE));
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open event log: " + e.getMessage(), e);
+            buffer = null;
+            return false;
+        }
+    }
+
+    /**
+     * The profile's value of a setting, as stored in a record
+     */
+    static int profileValue(Setting setting, SettingsManager.Profile profile) {
+        switch (setting) {
+            case AIRPLANE_MODE:
+                return profile.getAirplaneMode() ? 1 : 0;
+            case MOBILE_NETWORK:
+                return profile.getMobileNetwork() ? 1 : 0;
+            case WIFI:
+                return profile.getWifi() ? 1 : 0;
+            case BLUETOOTH:
+                return profile.getBluetooth() ? 1 : 0;
+            case SOUND_VOLUME:
+                return profile.getSoundVolume();
+            case EARPIECE_VOLUME:
+                return profile.getEarpieceVolume();
+            default:
+                throw new IllegalArgumentException("Unknown setting: " + setting);
+        }
+    }
+
+    /**
+     * The value a drifted setting had: the opposite of the profile for a switch, unknown for a volume
+     */
+    static int driftedValue(Setting setting, SettingsManager.Profile profile) {
+        if (setting == Setting.SOUND_VOLUME || setting == Setting.EARPIECE_VOLUME) {
+            return VALUE_UNKNOWN;
+        }
+        return 1 - profileValue(setting, profile);
+    }
+}
@@ -0,0 +1,455 @@
+package com.example.grannyaid;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Timing of the last fix runs, so a slow fix can be traced back to the step that was slow.
+ * Each run records monotonic timestamps (SystemClock.elapsedRealtime) relative to the tap:
+ * every probe and apply with its duration, and apart from those the milestones the run
+ * reached, the return from each guided step and completion, as their time since the tap.
+ * The last MAX_RUNS runs are kept in a small JSON file, written through AtomicFile; loading,
+ * recording and saving all happen on one background thread, callers only take the timestamps.
+ */
+public final class FixMetrics {
+    private static final String TAG = "FixMetrics";
+
+    private static final String FILE_NAME = "fix_metrics.json";
+    private static final int MAX_RUNS = 100;
+
+    // Milestones, recorded with their time since the tap only
+    public static final String DIAGNOSED = "diagnosed";
+    public static final String AUTOMATIC_DONE = "automatic_done";
+    public static final String GUIDED_RETURN = "guided_return";
+    public static final String COMPLETE = "complete";
+    private static final List<String> MILESTONES = Arrays.asList(DIAGNOSED, AUTOMATIC_DONE, GUIDED_RETURN, COMPLETE);
+
+    // Time the user spent on one guided step, from opening it to coming back
+    public static final String GUIDED_STEP = "guided_step";
+
+    // How a run ended
+    public static final String OUTCOME_ALREADY_CORRECT = "already_correct";
+    public static final String OUTCOME_FIXED = "fixed";
+    public static final String OUTCOME_PARTIALLY_FIXED = "partially_fixed";
+    public static final String OUTCOME_NOT_FIXED = "not_fixed";
+    public static final String OUTCOME_ERROR = "error";
+
+    private static FixMetrics instance;
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * One timed step of a run
+     */
+    private static final class Event {
+        final String name;
+        final long atMs;
+        final long durationMs;
+
+        Event(String name, long atMs, long durationMs) {
+            this.name = name;
+            this.atMs = atMs;
+            this.durationMs = durationMs;
+        }
+    }
+
+    /**
+     * A point the run reached, atMs after the tap
+     */
+    private static final class Milestone {
+        final String name;
+        final long atMs;
+
+        Milestone(String name, long atMs) {
+            this.name = name;
+            this.atMs = atMs;
+        }
+    }
+
+    private static final class Run {
+        final long tapAt;
+        final long startedAtWallClock;
+        final List<Event> events = new ArrayList<>();
+        final List<Milestone> milestones = new ArrayList<>();
+        long guidedStartAt = -1;
+        String outcome;
+
+        Run(long tapAt, long startedAtWallClock) {
+            this.tapAt = tapAt;
+            this.startedAtWallClock = startedAtWallClock;
+        }
+    }
+
+    /**
+     * Percentiles of one step's duration, or of the time a milestone was reached, over all stored runs
+     */
+    public static final class Summary {
+        public final String name;
+        public final int count;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long max;
+
+        Summary(String name, List<Long> sortedDurations) {
+            this.name = name;
+            this.count = sortedDurations.size();
+            this.p50 = percentile(sortedDurations, 50);
+            this.p90 = percentile(sortedDurations, 90);
+            this.p99 = percentile(sortedDurations, 99);
+            this.max = sortedDurations.get(count - 1);
+        }
+    }
+
+    /**
+     * Percentiles plus the raw runs they were computed from
+     */
+    public static final class Report {
+        private final List<Summary> summaries;
+        private final List<Summary> milestones;
+        private final JSONObject json;
+
+        Report(List<Summary> summaries, List<Summary> milestones, JSONObject json) {
+            this.summaries = Collections.unmodifiableList(summaries);
+            this.milestones = Collections.unmodifiableList(milestones);
+            this.json = json;
+        }
+
+        /**
+         * How long each step took
+         */
+        public List<Summary> getSummaries() {
+            return summaries;
+        }
+
+        /**
+         * How long after the tap each milestone was reached
+         */
+        public List<Summary> getMilestones() {
+            return milestones;
+        }
+
+        public JSONObject toJson() {
+            return json;
+        }
+    }
+
+    public interface ReportCallback {
+        void onReport(Report report);
+    }
+
+    private final AtomicFile file;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "GrannyAid-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Only touched on the executor
+    private final ArrayDeque<Run> runs = new ArrayDeque<>();
+    private boolean loaded = false;
+    private Run current;
+
+    // Lets callers on any thread skip recording when no fix is running
+    private volatile boolean runActive = false;
+
+    public static synchronized FixMetrics getInstance(Context context) {
+        if (instance == null) {
+            instance = new FixMetrics(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private FixMetrics(Context context) {
+        this.file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * The user tapped FIX IT; an unfinished previous run is dropped
+     */
+    public void beginRun() {
+        long now = SystemClock.elapsedRealtime();
+        long wallClock = System.currentTimeMillis();
+        runActive = true;
+        executor.execute(() -> current = new Run(now, wallClock));
+    }
+
+    /**
+     * Record a step that ran from startMs to endMs, both SystemClock.elapsedRealtime()
+     */
+    public void record(String name, long startMs, long endMs) {
+        if (!runActive) {
+            return;
+        }
+        executor.execute(() -> {
+            if (current != null) {
+                current.events.add(new Event(name, startMs - current.tapAt, endMs - startMs));
+            }
+        });
+    }
+
+    /**
+     * Record that the run reached a milestone now
+     */
+    public void recordMilestone(String name) {
+        if (!runActive) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        executor.execute(() -> {
+            if (current != null) {
+                current.milestones.add(new Milestone(name, now - current.tapAt));
+            }
+        });
+    }
+
+    /**
+     * A guided step is being shown and the user is about to leave for the Settings app
+     */
+    public void markGuidedStart() {
+        if (!runActive) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        executor.execute(() -> {
+            if (current != null) {
+                current.guidedStartAt = now;
+            }
+        });
+    }
+
+    /**
+     * The user came back from a guided step, called from onResume()
+     */
+    public void recordGuidedReturn() {
+        if (!runActive) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        executor.execute(() -> {
+            if (current == null || current.guidedStartAt < 0) {
+                return;
+            }
+            long at = now - current.tapAt;
+            current.events.add(new Event(GUIDED_STEP, current.guidedStartAt - current.tapAt,
+                    now - current.guidedStartAt));
+            current.milestones.add(new Milestone(GUIDED_RETURN, at));
+            current.guidedStartAt = -1;
+        });
+    }
+
+    /**
+     * The run is over; it is stored with the given outcome
+     */
+    public void endRun(String outcome) {
+        if (!runActive) {
+            return;
+        }
+        runActive = false;
+        long now = SystemClock.elapsedRealtime();
+        executor.execute(() -> {
+            Run run = current;
+            current = null;
+            if (run == null) {
+                return;
+            }
+            long at = now - run.tapAt;
+            run.milestones.add(new Milestone(COMPLETE, at));
+            run.outcome = outcome;
+            ensureLoaded();
+            runs.addLast(run);
+            while (runs.size() > MAX_RUNS) {
+                runs.removeFirst();
+            }
+            save();
+            Log.d(TAG, "Fix run " + outcome + " in " + at + "ms");
+        });
+    }
+
+    /**
+     * Compute percentiles of every step over the stored runs, delivered on the main thread
+     */
+    public void loadReport(ReportCallback callback) {
+        executor.execute(() -> {
+            ensureLoaded();
+            Report report = buildReport();
+            mainHandler.post(() -> callback.onReport(report));
+        });
+    }
+
+    public void clear() {
+        executor.execute(() -> {
+            runs.clear();
+            loaded = true;
+            file.delete();
+        });
+    }
+
+    private Report buildReport() {
+        // Keep the steps and milestones in the order they first appear
+        Map<String, List<Long>> durations = new LinkedHashMap<>();
+        Map<String, List<Long>> offsets = new LinkedHashMap<>();
+        for (Run run : runs) {
+            for (Event event : run.events) {
+                addValue(durations, event.name, event.durationMs);
+            }
+            for (Milestone milestone : run.milestones) {
+                addValue(offsets, milestone.name, milestone.atMs);
+            }
+        }
+
+        List<Summary> summaries = summarize(durations);
+        List<Summary> milestones = summarize(offsets);
+        JSONObject json = new JSONObject();
+        try {
+            json.put("percentilesMs", summariesToJson(summaries));
+            json.put("milestonesSinceTapMs", summariesToJson(milestones));
+            json.put("runs", runsToJson());
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to build metrics report: " + e.getMessage(), e);
+        }
+        return new Report(summaries, milestones, json);
+    }
+
+    private static void addValue(Map<String, List<Long>> series, String name, long value) {
+        List<Long> values = series.get(name);
+        if (values == null) {
+            values = new ArrayList<>();
+            series.put(name, values);
+        }
+        values.add(value);
+    }
+
+    private static List<Summary> summarize(Map<String, List<Long>> series) {
+        List<Summary> summaries = new ArrayList<>();
+        for (Map.Entry<String, List<Long>> entry : series.entrySet()) {
+            List<Long> values = entry.getValue();
+            Collections.sort(values);
+            summaries.add(new Summary(entry.getKey(), values));
+        }
+        return summaries;
+    }
+
+    private static JSONObject summariesToJson(List<Summary> summaries) throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Summary summary : summaries) {
+            json.put(summary.name, new JSONObject()
+                    .put("count", summary.count)
+                    .put("p50", summary.p50)
+                    .put("p90", summary.p90)
+                    .put("p99", summary.p99)
+                    .put("max", summary.max));
+        }
+        return json;
+    }
+
+    /**
+     * Nearest-rank percentile of a sorted, non-empty list
+     */
+    private static long percentile(List<Long> sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    private JSONArray runsToJson() throws JSONException {
+        JSONArray array = new JSONArray();
+        for (Run run : runs) {
+            JSONArray events = new JSONArray();
+            for (Event event : run.events) {
+                events.put(new JSONObject()
+                        .put("name", event.name)
+                        .put("atMs", event.atMs)
+                        .put("durationMs", event.durationMs));
+            }
+            JSONArray milestones = new JSONArray();
+            for (Milestone milestone : run.milestones) {
+                milestones.put(new JSONObject()
+                        .put("name", milestone.name)
+                        .put("atMs", milestone.atMs));
+            }
+            array.put(new JSONObject()
+                    .put("startedAt", run.startedAtWallClock)
+                    .put("outcome", run.outcome)
+                    .put("events", events)
+                    .put("milestones", milestones));
+        }
+        return array;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        try {
+            JSONArray array = new JSONArray(new String(file.readFully(), StandardCharsets.UTF_8));
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject object = array.getJSONObject(i);
+                Run run = new Run(0, object.getLong("startedAt"));
+                run.outcome = object.optString("outcome", null);
+                JSONArray events = object.getJSONArray("events");
+                for (int j = 0; j < events.length(); j++) {
+                    JSONObject event = events.getJSONObject(j);
+                    String name = event.getString("name");
+                    if (MILESTONES.contains(name)) {
+                        // Files from before milestones were kept apart
+                        run.milestones.add(new Milestone(name, event.getLong("atMs")));
+                    } else {
+                        run.events.add(new Event(name, event.getLong("atMs"), event.getLong("durationMs")));
+                    }
+                }
+                JSONArray milestones = object.optJSONArray("milestones");
+                for (int j = 0; milestones != null && j < milestones.length(); j++) {
+                    JSONObject milestone = milestones.getJSONObject(j);
+                    run.milestones.add(new Milestone(milestone.getString("name"), milestone.getLong("atMs")));
+                }
+                runs.addLast(run);
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing recorded yet
+        } catch (IOException | JSONException e) {
+            // Metrics are only diagnostics, start over rather than fail
+            Log.e(TAG, "Failed to load metrics, starting over: " + e.getMessage(), e);
+            runs.clear();
+        }
+    }
+
+    private void save() {
+        FileOutputStream out = null;
+        try {
+            byte[] data = runsToJson().toString().getBytes(StandardCharsets.UTF_8);
+            out = file.startWrite();
+            out.write(data);
+            file.finishWrite(out);
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Failed to save metrics: " + e.getMessage(), e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+}
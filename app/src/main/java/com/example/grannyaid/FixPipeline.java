@@ -0,0 +1,269 @@
+package com.example.grannyaid;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the registered setting handlers for one fix.
+ * Every automatic handler is applied first, all together in one background batch,
+ * then all guided handlers are handed to the user at once, on the guided checklist.
+ * Probes, applies and verifications run on the DeviceIo executor; all progress is recorded
+ * in the FixSession, which must only be touched on the main thread.
+ */
+public final class FixPipeline {
+    private static final String TAG = "FixPipeline";
+
+    private final List<SettingHandler> handlers;
+    private final DeviceController deviceController;
+
+    public FixPipeline(List<SettingHandler> handlers, DeviceController deviceController) {
+        this.handlers = handlers;
+        this.deviceController = deviceController;
+    }
+
+    public List<SettingHandler> getHandlers() {
+        return handlers;
+    }
+
+    /**
+     * Record in the session which settings differ from the profile.
+     * Settings that already match count as successful. The handlers probe in the background,
+     * onDone gets true on the main thread once the session is updated, or false if probing failed.
+     */
+    public void diagnose(SettingsManager.Profile profile, DeviceStateSnapshot snapshot, FixSession session,
+                         DeviceIo.Callback<Boolean> onDone) {
+        DeviceIo.run(() -> {
+            boolean[] drifted = new boolean[handlers.size()];
+            for (int i = 0; i < handlers.size(); i++) {
+                drifted[i] = handlers.get(i).probe(profile, snapshot);
+            }
+            return drifted;
+        }, null, drifted -> {
+            if (drifted == null) {
+                onDone.onResult(false);
+                return;
+            }
+            for (int i = 0; i < handlers.size(); i++) {
+                Setting setting = handlers.get(i).getSetting();
+                session.setNeedsFix(setting, drifted[i]);
+                if (!drifted[i]) {
+                    session.setSuccessful(setting, true);
+                }
+                Log.d(TAG, setting + ": need fix=" + drifted[i]);
+            }
+            // From here on a restarted process continues without probing again
+            session.markDiagnosed();
+            onDone.onResult(true);
+        });
+    }
+
+    /**
+     * Add a drift event to the log for every setting the diagnosis found off the profile
+     */
+    public void logDrift(EventLog eventLog, SettingsManager.Profile profile, FixSession session) {
+        for (SettingHandler handler : handlers) {
+            Setting setting = handler.getSetting();
+            if (session.needsFix(setting)) {
+                eventLog.recordDrift(setting, EventLog.driftedValue(setting, profile),
+                        EventLog.profileValue(setting, profile));
+            }
+        }
+    }
+
+    /**
+     * Add the outcome of every setting this fix attempted to the log, called when the fix ends
+     */
+    public void logOutcome(EventLog eventLog, SettingsManager.Profile profile, FixSession session) {
+        long now = System.currentTimeMillis();
+        for (SettingHandler handler : handlers) {
+            Setting setting = handler.getSetting();
+            if (!session.needsFix(setting) || !session.wasAttempted(setting)) {
+                continue;
+            }
+            boolean fixed = session.isSuccessful(setting);
+            int before = EventLog.driftedValue(setting, profile);
+            eventLog.recordFix(setting,
+                    handler.isAutomatic() ? EventLog.PATH_AUTOMATIC : EventLog.PATH_GUIDED, fixed,
+                    before, fixed ? EventLog.profileValue(setting, profile) : before,
+                    session.getDurationMs(setting, now));
+        }
+    }
+
+    /**
+     * Whether the diagnosis found any setting that differs from the profile
+     */
+    public boolean hasDrift(FixSession session) {
+        for (SettingHandler handler : handlers) {
+            if (session.needsFix(handler.getSetting())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasPendingAutomatic(FixSession session) {
+        return !pendingHandlers(session, true).isEmpty();
+    }
+
+    public boolean hasPendingGuided(FixSession session) {
+        return !pendingHandlers(session, false).isEmpty();
+    }
+
+    /**
+     * Apply every pending automatic handler in parallel and call onDone on the main thread
+     * once the system has confirmed, or failed to confirm, every change
+     */
+    public void runAutomaticBatch(SettingsManager.Profile profile, FixSession session, Runnable onDone) {
+        List<SettingHandler> batch = pendingHandlers(session, true);
+        if (batch.isEmpty()) {
+            DeviceIo.postToMain(onDone);
+            return;
+        }
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        // When each handler's own outcome was known, the batch as a whole waits for the slowest
+        long[] settledAt = new long[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            SettingHandler handler = batch.get(i);
+            int index = i;
+            // Confirmations of all handlers are awaited at the same time, none of them holds a thread
+            results.add(CompletableFuture.supplyAsync(() -> applySafely(handler, profile), DeviceIo.getExecutor())
+                    .thenCompose(accepted -> accepted ?
+                            confirmSafely(handler, profile) : CompletableFuture.completedFuture(false))
+                    .whenComplete((result, error) -> settledAt[index] = System.currentTimeMillis()));
+        }
+
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).whenComplete((ignored, error) ->
+                DeviceIo.postToMain(() -> {
+                    // Only now mark them attempted, a batch cut short by process death simply runs again
+                    for (int i = 0; i < batch.size(); i++) {
+                        SettingHandler handler = batch.get(i);
+                        boolean successful = results.get(i).getNow(false);
+                        if (!successful && !handler.isAutomatic()) {
+                            // The direct path turned out not to work here, guide the user instead
+                            continue;
+                        }
+                        session.markAttempted(handler.getSetting());
+                        session.setSuccessful(handler.getSetting(), successful);
+                        session.markSettled(handler.getSetting(), settledAt[i]);
+                    }
+                    onDone.run();
+                }));
+    }
+
+    /**
+     * Verify the guided settings the user was sent off to fix, then hand every guided setting
+     * that is still pending to the user. onGuided gets them on the main thread, in registry order,
+     * for the guided checklist; an empty list means there is nothing left to guide the user through.
+     */
+    public void runGuided(SettingsManager.Profile profile, FixSession session,
+                          DeviceIo.Callback<List<Setting>> onGuided) {
+        // Decided on the main thread, the session is only read and written there
+        List<SettingHandler> toVerify = guidedInProgress(session);
+
+        // The user may have just come back from the checklist, see what worked
+        DeviceIo.run(() -> {
+            boolean[] verified = new boolean[toVerify.size()];
+            for (int i = 0; i < toVerify.size(); i++) {
+                verified[i] = verifySafely(toVerify.get(i), profile);
+            }
+            // Looked up here so the checklist can open the panel without a binder call
+            deviceController.isConnectivityPanelAvailable();
+            return verified;
+        }, new boolean[toVerify.size()], verified -> {
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < toVerify.size(); i++) {
+                if (verified[i]) {
+                    session.setSuccessful(toVerify.get(i).getSetting(), true);
+                    session.markSettled(toVerify.get(i).getSetting(), now);
+                }
+            }
+            onGuided.onResult(startGuided(session));
+        });
+    }
+
+    /**
+     * Guided handlers the user was sent off to fix and that aren't confirmed yet
+     */
+    public List<SettingHandler> guidedInProgress(FixSession session) {
+        List<SettingHandler> inProgress = new ArrayList<>();
+        for (SettingHandler handler : handlers) {
+            Setting setting = handler.getSetting();
+            if (!handler.isAutomatic() && session.wasAttempted(setting) && !session.isSuccessful(setting)) {
+                inProgress.add(handler);
+            }
+        }
+        return inProgress;
+    }
+
+    private List<Setting> startGuided(FixSession session) {
+        List<Setting> settings = new ArrayList<>();
+        for (SettingHandler handler : pendingHandlers(session, false)) {
+            // Mark the steps as attempted before the user leaves for the checklist,
+            // so a restarted process verifies them instead of repeating them
+            session.markAttempted(handler.getSetting());
+            session.setSuccessful(handler.getSetting(), false);
+            settings.add(handler.getSetting());
+        }
+        return settings;
+    }
+
+    /**
+     * Whether every setting that was attempted ended up as desired
+     */
+    public boolean allAttemptedSucceeded(FixSession session) {
+        for (SettingHandler handler : handlers) {
+            Setting setting = handler.getSetting();
+            if (session.wasAttempted(setting) && !session.isSuccessful(setting)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean verifySafely(SettingHandler handler, SettingsManager.Profile profile) {
+        try {
+            return handler.verify(profile);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to verify " + handler.getSetting() + ": " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private List<SettingHandler> pendingHandlers(FixSession session, boolean automatic) {
+        List<SettingHandler> pending = new ArrayList<>();
+        for (SettingHandler handler : handlers) {
+            Setting setting = handler.getSetting();
+            if (handler.isAutomatic() == automatic && session.needsFix(setting) && !session.wasAttempted(setting)) {
+                pending.add(handler);
+            }
+        }
+        return pending;
+    }
+
+    private static CompletableFuture<Boolean> confirmSafely(SettingHandler handler, SettingsManager.Profile profile) {
+        try {
+            return handler.confirm(profile).exceptionally(e -> {
+                Log.e(TAG, "Failed to confirm " + handler.getSetting() + ": " + e.getMessage(), e);
+                return false;
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to confirm " + handler.getSetting() + ": " + e.getMessage(), e);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    private static boolean applySafely(SettingHandler handler, SettingsManager.Profile profile) {
+        try {
+            boolean success = handler.apply(profile);
+            Log.d(TAG, "Applied " + handler.getSetting() + ": success=" + success);
+            return success;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to apply " + handler.getSetting() + ": " + e.getMessage(), e);
+            return false;
+        }
+    }
+}
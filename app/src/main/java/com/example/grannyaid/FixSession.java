@@ -0,0 +1,215 @@
+package com.example.grannyaid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+/**
+ * Progress of one FIX IT run.
+ * All flags live in a single int that is written to its own preferences file on every
+ * transition, so a run survives the process being killed while the user is in the
+ * system Settings app and continues at the exact step, without probing the device again.
+ */
+public final class FixSession {
+    private static final String TAG = "FixSession";
+
+    private static final String PREFS_NAME = "GrannyAidFixSession";
+    private static final String KEY_STATE = "state";
+    private static final String KEY_PROFILE_VERSION = "profile_version";
+    private static final String KEY_STARTED_AT = "started_at";
+    private static final String KEY_SETTLED_AT_PREFIX = "settled_at_";
+
+    // A run the user abandoned this long ago is not resumed
+    private static final long MAX_SESSION_AGE_MS = 30 * 60 * 1000;
+
+    // Per-setting flags, three bits for each Setting ordinal
+    private static final int FLAG_NEEDS_FIX = 1;
+    private static final int FLAG_ATTEMPTED = 1 << 1;
+    private static final int FLAG_SUCCESS = 1 << 2;
+    private static final int BITS_PER_SETTING = 3;
+
+    // Session-wide flags, stored above the per-setting bits
+    private static final int SESSION_SHIFT = Setting.values().length * BITS_PER_SETTING;
+    private static final int FLAG_ACTIVE = 1 << SESSION_SHIFT;
+    private static final int FLAG_DIAGNOSED = 1 << (SESSION_SHIFT + 1);
+
+    private final SharedPreferences preferences;
+    private int state;
+    private long profileVersion;
+    private long startedAt;
+    // Wall clock time each setting was confirmed or given up on, 0 while it is still open
+    private final long[] settledAt = new long[Setting.values().length];
+
+    private FixSession(SharedPreferences preferences, int state, long profileVersion, long startedAt) {
+        this.preferences = preferences;
+        this.state = state;
+        this.profileVersion = profileVersion;
+        this.startedAt = startedAt;
+        for (Setting setting : Setting.values()) {
+            settledAt[setting.ordinal()] = preferences.getLong(KEY_SETTLED_AT_PREFIX + setting.name(), 0);
+        }
+    }
+
+    /**
+     * Load the last saved session. A session that was started for another profile version,
+     * or too long ago, is dropped and an idle session is returned.
+     */
+    public static FixSession restore(Context context, long currentProfileVersion) {
+        SharedPreferences preferences = context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        int state = preferences.getInt(KEY_STATE, 0);
+        long profileVersion = preferences.getLong(KEY_PROFILE_VERSION, 0);
+        long startedAt = preferences.getLong(KEY_STARTED_AT, 0);
+
+        FixSession session = new FixSession(preferences, state, profileVersion, startedAt);
+        if (session.isActive()) {
+            long age = System.currentTimeMillis() - startedAt;
+            if (profileVersion != currentProfileVersion || age < 0 || age > MAX_SESSION_AGE_MS) {
+                Log.d(TAG, "Dropping stale session: profileVersion=" + profileVersion +
+                        ", current=" + currentProfileVersion + ", age=" + age);
+                session.finish();
+            } else {
+                Log.d(TAG, "Restored " + session);
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Begin a new run for the given profile version, forgetting any previous progress
+     */
+    public void start(long profileVersion) {
+        this.state = FLAG_ACTIVE;
+        this.profileVersion = profileVersion;
+        this.startedAt = System.currentTimeMillis();
+        SharedPreferences.Editor editor = preferences.edit()
+                .putInt(KEY_STATE, state)
+                .putLong(KEY_PROFILE_VERSION, profileVersion)
+                .putLong(KEY_STARTED_AT, startedAt);
+        for (Setting setting : Setting.values()) {
+            settledAt[setting.ordinal()] = 0;
+            editor.remove(KEY_SETTLED_AT_PREFIX + setting.name());
+        }
+        editor.apply();
+    }
+
+    /**
+     * End the run, whatever its outcome
+     */
+    public void finish() {
+        state = 0;
+        persist();
+    }
+
+    public boolean isActive() {
+        return (state & FLAG_ACTIVE) != 0;
+    }
+
+    /**
+     * Whether drift has been worked out for this run, so the device doesn't need to be probed again
+     */
+    public boolean isDiagnosed() {
+        return (state & FLAG_DIAGNOSED) != 0;
+    }
+
+    public void markDiagnosed() {
+        setFlag(FLAG_DIAGNOSED, true);
+    }
+
+    public long getProfileVersion() {
+        return profileVersion;
+    }
+
+    /**
+     * Wall clock time the run was started, kept across process restarts
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public boolean needsFix(Setting setting) {
+        return hasSettingFlag(setting, FLAG_NEEDS_FIX);
+    }
+
+    public void setNeedsFix(Setting setting, boolean needsFix) {
+        setFlag(settingFlag(setting, FLAG_NEEDS_FIX), needsFix);
+    }
+
+    public boolean wasAttempted(Setting setting) {
+        return hasSettingFlag(setting, FLAG_ATTEMPTED);
+    }
+
+    public void markAttempted(Setting setting) {
+        setFlag(settingFlag(setting, FLAG_ATTEMPTED), true);
+    }
+
+    public boolean isSuccessful(Setting setting) {
+        return hasSettingFlag(setting, FLAG_SUCCESS);
+    }
+
+    public void setSuccessful(Setting setting, boolean success) {
+        setFlag(settingFlag(setting, FLAG_SUCCESS), success);
+    }
+
+    /**
+     * Remember the wall clock time the outcome of this setting became known:
+     * the system confirmed the change, the user was verified to have made it, or it failed
+     */
+    public void markSettled(Setting setting, long timeMs) {
+        settledAt[setting.ordinal()] = timeMs;
+        preferences.edit().putLong(KEY_SETTLED_AT_PREFIX + setting.name(), timeMs).apply();
+    }
+
+    /**
+     * Time from the start of the run until the outcome of this setting became known,
+     * or until now for a setting that never settled
+     */
+    public long getDurationMs(Setting setting, long now) {
+        long end = settledAt[setting.ordinal()];
+        return (end > 0 ? end : now) - startedAt;
+    }
+
+    public boolean anySuccessful() {
+        for (Setting setting : Setting.values()) {
+            if (isSuccessful(setting)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int settingFlag(Setting setting, int flag) {
+        return flag << (setting.ordinal() * BITS_PER_SETTING);
+    }
+
+    private boolean hasSettingFlag(Setting setting, int flag) {
+        return (state & settingFlag(setting, flag)) != 0;
+    }
+
+    private void setFlag(int flag, boolean value) {
+        int newState = value ? (state | flag) : (state & ~flag);
+        if (newState != state) {
+            state = newState;
+            persist();
+        }
+    }
+
+    private void persist() {
+        // A single int, written asynchronously, keeps every transition cheap
+        preferences.edit().putInt(KEY_STATE, state).apply();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("FixSession{active=").append(isActive())
+                .append(", diagnosed=").append(isDiagnosed())
+                .append(", profileVersion=").append(profileVersion);
+        for (Setting setting : Setting.values()) {
+            builder.append(", ").append(setting)
+                    .append("=[need=").append(needsFix(setting))
+                    .append(", attempted=").append(wasAttempted(setting))
+                    .append(", success=").append(isSuccessful(setting)).append(']');
+        }
+        return builder.append('}').toString();
+    }
+}
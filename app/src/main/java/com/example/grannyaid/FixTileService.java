@@ -0,0 +1,71 @@
+package com.example.grannyaid;
+
+import android.app.PendingIntent;
+import android.content.Intent;
+import android.os.Build;
+import android.service.quicksettings.Tile;
+import android.service.quicksettings.TileService;
+import android.util.Log;
+
+/**
+ * Quick Settings tile that runs the fix with one tap, without opening the app
+ * unless a guided step is needed
+ */
+public class FixTileService extends TileService {
+    private static final String TAG = "FixTileService";
+
+    @Override
+    public void onStartListening() {
+        super.onStartListening();
+        updateTile(Tile.STATE_INACTIVE);
+    }
+
+    @Override
+    public void onClick() {
+        super.onClick();
+        if (isLocked()) {
+            unlockAndRun(this::runFix);
+        } else {
+            runFix();
+        }
+    }
+
+    private void runFix() {
+        boolean started = HeadlessFix.run(this, result -> {
+            updateTile(Tile.STATE_INACTIVE);
+            if (result == HeadlessFix.Result.NEEDS_USER) {
+                openMainActivity();
+            } else {
+                HeadlessFix.showResult(this, result);
+            }
+        });
+        if (started) {
+            updateTile(Tile.STATE_ACTIVE);
+        }
+    }
+
+    private void openMainActivity() {
+        Intent intent = HeadlessFix.createMainActivityIntent(this);
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+                startActivityAndCollapse(PendingIntent.getActivity(this, 0, intent,
+                        PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT));
+            } else {
+                startActivityAndCollapse(intent);
+            }
+        } catch (Exception e) {
+            // The panel may already be closed and the tile unbound by the time the fix is done
+            Log.w(TAG, "Failed to open MainActivity from the tile: " + e.getMessage());
+            HeadlessFix.openMainActivity(this);
+        }
+    }
+
+    private void updateTile(int state) {
+        Tile tile = getQsTile();
+        if (tile == null) {
+            return;
+        }
+        tile.setState(state);
+        tile.updateTile();
+    }
+}
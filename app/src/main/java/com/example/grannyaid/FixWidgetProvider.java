@@ -0,0 +1,55 @@
+package com.example.grannyaid;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.Context;
+import android.content.Intent;
+import android.widget.RemoteViews;
+import android.widget.Toast;
+
+/**
+ * Home screen widget with a single FIX IT button. The fix runs in the background
+ * and MainActivity is only opened if a guided step is needed; where the system doesn't let it
+ * open, a message asks the user to open the app, which continues the saved fix.
+ */
+public class FixWidgetProvider extends AppWidgetProvider {
+    private static final String ACTION_FIX = "com.example.grannyaid.action.FIX";
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        Intent intent = new Intent(context, FixWidgetProvider.class).setAction(ACTION_FIX);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_fix);
+        views.setOnClickPendingIntent(R.id.widgetFixButton, pendingIntent);
+        appWidgetManager.updateAppWidget(appWidgetIds, views);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!ACTION_FIX.equals(intent.getAction())) {
+            super.onReceive(context, intent);
+            return;
+        }
+
+        // Keep the process alive until the fix is done
+        PendingResult pendingResult = goAsync();
+        boolean started = HeadlessFix.run(context, result -> {
+            if (result == HeadlessFix.Result.NEEDS_USER) {
+                // From Android 10 a receiver may only start an activity for a few seconds after
+                // the tap, and on 14 only if the launcher allows it; the fix can take longer.
+                // A blocked start fails silently, so the user is always told where to go on.
+                HeadlessFix.openMainActivity(context);
+                Toast.makeText(context, R.string.open_app_to_finish, Toast.LENGTH_LONG).show();
+            } else {
+                HeadlessFix.showResult(context, result);
+            }
+            pendingResult.finish();
+        });
+        if (!started) {
+            pendingResult.finish();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.grannyaid;
+
+import android.app.admin.DeviceAdminReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Admin component for Device Owner mode. Set it up on a freshly reset phone with
+ * adb shell dpm set-device-owner com.example.grannyaid/.GrannyAidAdminReceiver
+ * and every fix runs without a single dialog, as far as the platform allows.
+ */
+public class GrannyAidAdminReceiver extends DeviceAdminReceiver {
+
+    @Override
+    public void onEnabled(Context context, Intent intent) {
+        super.onEnabled(context, intent);
+        redetect(context);
+    }
+
+    @Override
+    public void onDisabled(Context context, Intent intent) {
+        super.onDisabled(context, intent);
+        redetect(context);
+    }
+
+    private static void redetect(Context context) {
+        DeviceCapabilities capabilities = DeviceCapabilities.getInstance(context);
+        DeviceIo.execute(capabilities::detect);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.grannyaid;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.StrictMode;
+
+/**
+ * Turns on StrictMode in debug builds and warms up the preference files off the main thread
+ */
+public class GrannyAidApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if (BuildConfig.DEBUG) {
+            enableStrictMode();
+        }
+
+        // The first access to a preference file reads it from disk; do that here,
+        // so the screens find them in memory
+        Context appContext = getApplicationContext();
+        DeviceIo.execute(() -> {
+            SettingsManager.Profile profile = new SettingsManager(appContext).getProfile();
+            FixSession.restore(appContext, profile.getVersion());
+            FixMetrics.getInstance(appContext);
+            // Whether the fix may skip the dialogs, decided once before the first tap
+            DeviceCapabilities.getInstance(appContext).detect();
+            // Which Settings screen each guided step opens, remembered until the next system update
+            SettingsScreens.getInstance(appContext).resolve();
+        });
+
+        // Profiles pushed by an administrator, if the phone is managed
+        ManagedConfiguration.start(this);
+    }
+
+    /**
+     * The device that the fix screens work on, created for each screen so that guided steps open
+     * Settings in its task. Tests replace it with a simulated device.
+     */
+    public DeviceController createDeviceController(Context context) {
+        return new DeviceSettingsManager(context);
+    }
+    
+    /**
+     * Any disk access, network access or device call (see DeviceIo.noteDeviceCall()) on the main
+     * thread kills the debug app, which also fails the instrumentation test that caused it
+     */
+    private static void enableStrictMode() {
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .detectCustomSlowCalls()
+                .penaltyLog()
+                .penaltyDeath()
+                .build());
+        StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                .detectLeakedClosableObjects()
+                .detectLeakedRegistrationObjects()
+                .penaltyLog()
+                .build());
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.grannyaid;
+
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.os.Bundle;
+import android.widget.Button;
+import android.widget.LinearLayout;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Every setting of a fix that needs the user, on one screen, instead of a dialog per setting.
+ * MainActivity opens it once the automatic fixes are done. One tap on a row opens the Settings
+ * screen for that setting; the row turns green as soon as the state cache sees the setting reach
+ * the profile. Once all rows are green, or the user taps Done, the screen closes and MainActivity
+ * verifies the settings and reports the result.
+ */
+public class GuidedChecklistActivity extends AppCompatActivity implements DeviceStateCache.Listener {
+
+    // Names of the Setting values to list, in registry order
+    static final String EXTRA_SETTINGS = "com.example.grannyaid.extra.SETTINGS";
+    // Version of the profile the fix session was started with
+    static final String EXTRA_PROFILE_VERSION = "com.example.grannyaid.extra.PROFILE_VERSION";
+
+    // Long enough to see the last row turn green
+    private static final long CLOSE_DELAY_MS = 1000;
+
+    private static final int COLOR_TODO = Color.parseColor("#FF9800");
+    private static final int COLOR_DONE = Color.parseColor("#4CAF50");
+
+    private DeviceStateCache stateCache;
+
+    // Fixed once onCreate() has run, read by the cache thread
+    private final List<SettingHandler> handlers = new ArrayList<>();
+    private final List<Button> rows = new ArrayList<>();
+
+    // Null until loaded in the background
+    private volatile SettingsManager.Profile profile;
+    private DeviceController controller;
+
+    private boolean closing = false;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_guided_checklist);
+        stateCache = DeviceStateCache.getInstance(this);
+
+        String[] names = getIntent().getStringArrayExtra(EXTRA_SETTINGS);
+        List<String> settings = names != null ? Arrays.asList(names) : new ArrayList<>();
+        // Created with this activity, so the Settings screens open in the app's task
+        controller = ((GrannyAidApplication) getApplication()).createDeviceController(this);
+        for (SettingHandler handler : SettingHandlers.create(this, controller)) {
+            if (settings.contains(handler.getSetting().name())) {
+                handlers.add(handler);
+            }
+        }
+        if (handlers.isEmpty()) {
+            finish();
+            return;
+        }
+
+        LinearLayout container = findViewById(R.id.checklistRows);
+        for (SettingHandler handler : handlers) {
+            Button row = (Button) getLayoutInflater().inflate(R.layout.item_checklist_row, container, false);
+            row.setEnabled(false);
+            row.setOnClickListener(v -> controller.openSettingsScreen(handler.getSetting()));
+            container.addView(row);
+            rows.add(row);
+        }
+        findViewById(R.id.checklistDoneButton).setOnClickListener(v -> finish());
+
+        DeviceIo.run(() -> {
+            // Looked up here so that a tap on a row needs no binder call
+            controller.isConnectivityPanelAvailable();
+            return new SettingsManager(this).getProfile();
+        }, null, loaded -> {
+            if (loaded == null || isFinishing() || isDestroyed()) {
+                return;
+            }
+            if (loaded.getVersion() != getIntent().getLongExtra(EXTRA_PROFILE_VERSION, -1)) {
+                // The caregiver changed the profile since the fix started, the rows would judge
+                // the settings against another profile; MainActivity deals with the stale session
+                finish();
+                return;
+            }
+            profile = loaded;
+            for (Button row : rows) {
+                row.setEnabled(true);
+            }
+            refresh();
+        });
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        stateCache.addListener(this);
+        // Whatever changed while the user was in the Settings app
+        refresh();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        stateCache.removeListener(this);
+    }
+
+    @Override
+    public void onStateChanged(Setting setting, boolean value) {
+        for (SettingHandler handler : handlers) {
+            if (handler.getSetting() == setting) {
+                refresh();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Verify every row in the background, then show the result
+     */
+    private void refresh() {
+        SettingsManager.Profile target = profile;
+        if (target == null) {
+            return;
+        }
+        DeviceIo.run(() -> {
+            boolean[] done = new boolean[handlers.size()];
+            for (int i = 0; i < handlers.size(); i++) {
+                done[i] = FixPipeline.verifySafely(handlers.get(i), target);
+            }
+            return done;
+        }, null, done -> {
+            if (done != null && !isFinishing() && !isDestroyed()) {
+                showStatus(target, done);
+            }
+        });
+    }
+
+    private void showStatus(SettingsManager.Profile target, boolean[] done) {
+        boolean allDone = true;
+        for (int i = 0; i < rows.size(); i++) {
+            Button row = rows.get(i);
+            row.setText(getString(handlers.get(i).getGuidedInstruction(target)) + "\n" +
+                    getString(done[i] ? R.string.checklist_ok : R.string.checklist_todo));
+            row.setBackgroundTintList(ColorStateList.valueOf(done[i] ? COLOR_DONE : COLOR_TODO));
+            allDone &= done[i];
+        }
+        if (allDone && !closing) {
+            closing = true;
+            rows.get(0).postDelayed(() -> {
+                if (!isFinishing() && !isDestroyed()) {
+                    finish();
+                }
+            }, CLOSE_DELAY_MS);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.grannyaid;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Brings MainActivity back as soon as every setting on the guided checklist reaches the profile,
+ * so the user doesn't have to find the way back from the Settings app. Listens to the state
+ * cache only while the user is away on the checklist or in Settings.
+ *
+ * The Settings screens are opened in the app's task (see DeviceSettingsManager), which is
+ * what allows this background activity start from Android 10 on. Screens that the Settings
+ * app moves into a task of its own block it; then the user comes back with Back as before.
+ */
+final class GuidedReturn implements DeviceStateCache.Listener {
+    private static final String TAG = "GuidedReturn";
+
+    // After this long the user has moved on to something else, don't jump up in front of it
+    static final long MAX_WATCH_MS = 10 * 60 * 1000;
+
+    private final Context context;
+    private final DeviceStateCache stateCache;
+
+    // Guarded by this
+    private List<SettingHandler> watched = Collections.emptyList();
+    private SettingsManager.Profile profile;
+    private long watchUntil;
+
+    GuidedReturn(Context context) {
+        this.context = context.getApplicationContext();
+        this.stateCache = DeviceStateCache.getInstance(context);
+    }
+
+    /**
+     * Start watching the handlers of the guided step, replacing any earlier step
+     */
+    synchronized void watch(List<SettingHandler> handlers, SettingsManager.Profile profile) {
+        stop();
+        if (handlers.isEmpty()) {
+            return;
+        }
+        this.watched = new ArrayList<>(handlers);
+        this.profile = profile;
+        this.watchUntil = SystemClock.elapsedRealtime() + MAX_WATCH_MS;
+        stateCache.addListener(this);
+        // The user may have been quicker than the listener
+        stateCache.getExecutor().execute(this::checkTargets);
+    }
+
+    synchronized void stop() {
+        if (watched.isEmpty()) {
+            return;
+        }
+        watched = Collections.emptyList();
+        profile = null;
+        stateCache.removeListener(this);
+    }
+
+    @Override
+    public void onStateChanged(Setting setting, boolean value) {
+        synchronized (this) {
+            boolean relevant = false;
+            for (SettingHandler handler : watched) {
+                relevant |= handler.getSetting() == setting;
+            }
+            if (!relevant) {
+                return;
+            }
+        }
+        checkTargets();
+    }
+
+    /**
+     * Runs on the cache thread. Verifying may need a binder call, so it happens outside the lock.
+     */
+    private void checkTargets() {
+        List<SettingHandler> handlers;
+        SettingsManager.Profile target;
+        synchronized (this) {
+            if (watched.isEmpty()) {
+                return;
+            }
+            if (SystemClock.elapsedRealtime() > watchUntil) {
+                Log.d(TAG, "Guided step left open too long, no longer watching");
+                stop();
+                return;
+            }
+            handlers = watched;
+            target = profile;
+        }
+        for (SettingHandler handler : handlers) {
+            if (!FixPipeline.verifySafely(handler, target)) {
+                return;
+            }
+        }
+        synchronized (this) {
+            if (watched != handlers) {
+                // Stopped or replaced meanwhile
+                return;
+            }
+            stop();
+        }
+        Log.i(TAG, "Guided step done, returning to the app");
+        bringAppToFront();
+    }
+
+    private void bringAppToFront() {
+        try {
+            // Clears the Settings screens above MainActivity, its onResume() continues the fix
+            context.startActivity(new Intent(context, MainActivity.class)
+                    .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
+                            Intent.FLAG_ACTIVITY_CLEAR_TOP |
+                            Intent.FLAG_ACTIVITY_SINGLE_TOP));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to return to the app: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.grannyaid;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import android.widget.Toast;
+
+/**
+ * Runs a fix without any Activity, for the Quick Settings tile and the home screen widget.
+ * It diagnoses and applies the automatic settings exactly like MainActivity does, using the same
+ * FixPipeline and persisted FixSession. Only when a guided step is left, or a permission is
+ * missing, the caller opens MainActivity, which continues the session where this left off.
+ * Must be called on the main thread.
+ */
+public final class HeadlessFix {
+    private static final String TAG = "HeadlessFix";
+
+    /**
+     * How a headless fix ended
+     */
+    public enum Result {
+        // Nothing had drifted
+        ALREADY_CORRECT,
+        FIXED,
+        PARTIALLY_FIXED,
+        NOT_FIXED,
+        // MainActivity has to be opened for a guided step or a permission
+        NEEDS_USER
+    }
+
+    public interface Callback {
+        void onDone(Result result);
+    }
+
+    /**
+     * Everything needed to decide whether to start, read off the main thread
+     */
+    private static final class Preamble {
+        SettingsManager.Profile profile;
+        FixSession session;
+        boolean hasPermissions;
+    }
+
+    // Only one headless fix at a time, repeated taps are ignored
+    private static boolean running = false;
+
+    private HeadlessFix() {
+    }
+
+    /**
+     * Start a fix; callback gets the result on the main thread.
+     * Returns false, and never calls back, if a headless fix is already running.
+     */
+    public static boolean run(Context context, Callback callback) {
+        if (running) {
+            Log.d(TAG, "Fix already running");
+            return false;
+        }
+        running = true;
+        Context appContext = context.getApplicationContext();
+        DeviceSettingsManager deviceSettingsManager = new DeviceSettingsManager(appContext);
+
+        DeviceIo.run(() -> {
+            Preamble preamble = new Preamble();
+            preamble.profile = new SettingsManager(appContext).getProfile();
+            preamble.session = FixSession.restore(appContext, preamble.profile.getVersion());
+            preamble.hasPermissions = deviceSettingsManager.hasRequiredPermissions();
+            return preamble;
+        }, null, preamble -> {
+            // Without the permissions, or with a fix already in progress, MainActivity takes over
+            if (preamble == null || !preamble.hasPermissions || preamble.session.isActive()) {
+                running = false;
+                callback.onDone(Result.NEEDS_USER);
+                return;
+            }
+            fix(appContext, deviceSettingsManager, preamble.profile, preamble.session, callback);
+        });
+        return true;
+    }
+
+    private static void fix(Context appContext, DeviceSettingsManager deviceSettingsManager,
+                            SettingsManager.Profile profile, FixSession session, Callback callback) {
+        FixPipeline fixPipeline = new FixPipeline(
+                SettingHandlers.create(appContext, deviceSettingsManager), deviceSettingsManager);
+        Log.d(TAG, "Fixing settings with values: " + profile);
+        session.start(profile.getVersion());
+        FixMetrics metrics = FixMetrics.getInstance(appContext);
+        metrics.beginRun();
+        EventLog eventLog = EventLog.getInstance(appContext);
+
+        DeviceStateSnapshot.capture(deviceSettingsManager, snapshot ->
+                fixPipeline.diagnose(profile, snapshot, session, diagnosed -> {
+                    if (!diagnosed) {
+                        Log.e(TAG, "Error diagnosing settings");
+                        session.finish();
+                        metrics.endRun(FixMetrics.OUTCOME_ERROR);
+                        running = false;
+                        callback.onDone(Result.NOT_FIXED);
+                        return;
+                    }
+                    metrics.recordMilestone(FixMetrics.DIAGNOSED);
+                    fixPipeline.logDrift(eventLog, profile, session);
+                    fixPipeline.runAutomaticBatch(profile, session, () -> {
+                        running = false;
+                        metrics.recordMilestone(FixMetrics.AUTOMATIC_DONE);
+                        if (fixPipeline.hasPendingGuided(session)) {
+                            // The session is saved, MainActivity resumes it at the first guided step
+                            // and also ends the timing of this run
+                            Log.d(TAG, "Guided steps left: " + session);
+                            callback.onDone(Result.NEEDS_USER);
+                            return;
+                        }
+                        Result result;
+                        String outcome;
+                        if (!fixPipeline.hasDrift(session)) {
+                            result = Result.ALREADY_CORRECT;
+                            outcome = FixMetrics.OUTCOME_ALREADY_CORRECT;
+                        } else if (fixPipeline.allAttemptedSucceeded(session)) {
+                            result = Result.FIXED;
+                            outcome = FixMetrics.OUTCOME_FIXED;
+                        } else if (session.anySuccessful()) {
+                            result = Result.PARTIALLY_FIXED;
+                            outcome = FixMetrics.OUTCOME_PARTIALLY_FIXED;
+                        } else {
+                            result = Result.NOT_FIXED;
+                            outcome = FixMetrics.OUTCOME_NOT_FIXED;
+                        }
+                        Log.d(TAG, "Settings applied: " + session + ", result=" + result);
+                        fixPipeline.logOutcome(eventLog, profile, session);
+                        session.finish();
+                        metrics.endRun(outcome);
+                        callback.onDone(result);
+                    });
+                }));
+    }
+
+    /**
+     * Tell the user how the fix went, with the same messages MainActivity uses
+     */
+    public static void showResult(Context context, Result result) {
+        int message;
+        switch (result) {
+            case ALREADY_CORRECT:
+                message = R.string.all_settings_already_correct;
+                break;
+            case FIXED:
+                message = R.string.settings_fixed;
+                break;
+            case PARTIALLY_FIXED:
+                message = R.string.settings_partially_fixed;
+                break;
+            case NOT_FIXED:
+                message = R.string.settings_not_fixed;
+                break;
+            default:
+                // MainActivity explains what's next
+                return;
+        }
+        Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+    }
+
+    /**
+     * Intent that brings MainActivity to the front so it continues the saved session
+     */
+    public static Intent createMainActivityIntent(Context context) {
+        return new Intent(context, MainActivity.class)
+                .putExtra(MainActivity.EXTRA_CONTINUE_FIX, true)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
+                        Intent.FLAG_ACTIVITY_CLEAR_TOP |
+                        Intent.FLAG_ACTIVITY_SINGLE_TOP);
+    }
+
+    public static void openMainActivity(Context context) {
+        try {
+            context.startActivity(createMainActivityIntent(context));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to open MainActivity: " + e.getMessage(), e);
+        }
+    }
+}
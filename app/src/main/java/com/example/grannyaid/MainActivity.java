@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Trace;
 import android.provider.Settings;
 import android.util.Log;
 import android.widget.Button;
@@ -15,12 +16,24 @@ import androidx.annotation.RequiresPermission;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.util.List;
+
 public class MainActivity extends AppCompatActivity {
     private static final int REQUEST_WRITE_SETTINGS = 1001;
     private static final int REQUEST_BLUETOOTH_PERMISSIONS = 1002;
     
+    // Async trace section from the FIX IT tap to the final result, measured by the macrobenchmark module
+    static final String TRACE_FIX = "GrannyAid.fix";
+    private static final int TRACE_FIX_COOKIE = 1;
+    
+    // Benchmark builds only: diagnose against DeviceStateSnapshot.matchingProfile() instead of probing
+    static final String EXTRA_FAKE_STATE = "com.example.grannyaid.extra.FAKE_STATE";
+    
+    // Set by the tile and the widget when a fix they started needs a guided step
+    static final String EXTRA_CONTINUE_FIX = "com.example.grannyaid.extra.CONTINUE_FIX";
+    
     private SettingsManager settingsManager;
-    private DeviceSettingsManager deviceSettingsManager;
+    private DeviceController deviceController;
     
     private Button fixButton;
     private Button settingsButton;
@@ -30,16 +43,13 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         
-        settingsManager = new SettingsManager(this);
-        deviceSettingsManager = new DeviceSettingsManager(this);
-        
         // Initialize buttons
         fixButton = findViewById(R.id.fixButton);
         settingsButton = findViewById(R.id.settingsButton);
         
         // Set up click listeners
         fixButton.setOnClickListener(v -> {
-            if (hasRequiredPermissions()) {
+            if (hasPermissions) {
                 fixSettings();
             } else {
                 showPermissionDialog();
@@ -47,31 +57,114 @@ public class MainActivity extends AppCompatActivity {
         });
         settingsButton.setOnClickListener(v -> openSettings());
         
-        // Check for required permissions
-        checkPermissions();
+        // The managers are created on first use, and everything that costs a binder call or
+        // a disk read runs on DeviceIo after the first frame, so the big button shows up quickly
+        runAfterFirstDraw(() -> {
+            // Start the background watchdog if the caregiver turned it on
+            DriftWatchdog.arm(this);
+            
+            // Check for required permissions
+            checkPermissions();
+        });
     }
     
-    private boolean hasRequiredPermissions() {
-        boolean hasWriteSettings = true;
-        boolean hasBluetoothPermissions = true;
-        
-        // Check WRITE_SETTINGS permission
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            hasWriteSettings = Settings.System.canWrite(this);
+    /**
+     * Run the action once the current frame has been drawn, unless the activity is going away by then
+     */
+    private void runAfterFirstDraw(Runnable action) {
+        getWindow().getDecorView().post(() -> {
+            if (!isFinishing() && !isDestroyed()) {
+                action.run();
+            }
+        });
+    }
+    
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        if (intent.getBooleanExtra(EXTRA_CONTINUE_FIX, false) && !isBusy()) {
+            // The session was started elsewhere, load it again; onResume() continues it
+            fixSession = null;
+            profile = null;
+            updateButtonState();
         }
-        
-        // Check BLUETOOTH_CONNECT permission for Android 12+
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-            hasBluetoothPermissions = checkSelfPermission(Manifest.permission.BLUETOOTH_CONNECT) 
-                    == android.content.pm.PackageManager.PERMISSION_GRANTED;
+    }
+    
+    private SettingsManager getSettingsManager() {
+        if (settingsManager == null) {
+            settingsManager = new SettingsManager(this);
         }
-        
-        return hasWriteSettings && hasBluetoothPermissions;
+        return settingsManager;
+    }
+    
+    private DeviceController getDeviceController() {
+        if (deviceController == null) {
+            deviceController = ((GrannyAidApplication) getApplication()).createDeviceController(this);
+        }
+        return deviceController;
+    }
+    
+    private FixPipeline getFixPipeline() {
+        if (fixPipeline == null) {
+            DeviceController controller = getDeviceController();
+            fixPipeline = new FixPipeline(SettingHandlers.create(this, controller), controller);
+        }
+        return fixPipeline;
+    }
+    
+    private GuidedReturn getGuidedReturn() {
+        if (guidedReturn == null) {
+            guidedReturn = new GuidedReturn(this);
+        }
+        return guidedReturn;
+    }
+    
+    /**
+     * The session loaded by loadFixSession(), null until then
+     */
+    private FixSession getFixSession() {
+        return fixSession;
+    }
+    
+    /**
+     * Load the saved session in the background, then run the action on the main thread
+     */
+    private void loadFixSession(Runnable then) {
+        if (fixSession != null) {
+            then.run();
+            return;
+        }
+        SettingsManager manager = getSettingsManager();
+        // Pick up a fix that was interrupted by a configuration change or by the process being killed
+        DeviceIo.run(() -> FixSession.restore(this, manager.getProfile().getVersion()), null, session -> {
+            if (session == null || isFinishing() || isDestroyed()) {
+                return;
+            }
+            if (fixSession == null) {
+                fixSession = session;
+            }
+            updateButtonState();
+            then.run();
+        });
+    }
+    
+    /**
+     * Check the permissions in the background, they are answered by system services
+     */
+    private void refreshPermissions() {
+        DeviceController controller = getDeviceController();
+        DeviceIo.run(controller::hasRequiredPermissions, false, granted -> {
+            hasPermissions = granted;
+            if (!isFinishing() && !isDestroyed()) {
+                updateButtonState();
+            }
+        });
     }
     
     private void updateButtonState() {
-        boolean hasPermissions = hasRequiredPermissions();
-        fixButton.setEnabled(hasPermissions);
+        // Stays disabled until the session is loaded and while the background part of a fix is running
+        fixButton.setEnabled(hasPermissions && fixSession != null && !isBusy());
         
         // Change button appearance based on permission state
         if (!hasPermissions) {
@@ -84,27 +177,40 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void checkPermissions() {
-        // Check for WRITE_SETTINGS permission on Android 6.0+
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            if (!Settings.System.canWrite(this)) {
-                showPermissionDialog();
-                return; // Handle one permission at a time
+        DeviceIo.run(this::findMissingPermission, null, missing -> {
+            if (isFinishing() || isDestroyed()) {
+                return;
             }
-        }
-        
-        // Check for BLUETOOTH_CONNECT permission on Android 12+
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-            if (checkSelfPermission(Manifest.permission.BLUETOOTH_CONNECT) != 
-                    android.content.pm.PackageManager.PERMISSION_GRANTED) {
+            hasPermissions = missing == null;
+            if (Manifest.permission.WRITE_SETTINGS.equals(missing)) {
+                showPermissionDialog();
+            } else if (Manifest.permission.BLUETOOTH_CONNECT.equals(missing)) {
                 requestPermissions(
                         new String[]{Manifest.permission.BLUETOOTH_CONNECT},
                         REQUEST_BLUETOOTH_PERMISSIONS);
-                return; // Handle one permission at a time
             }
+            
+            // Update button state based on permissions
+            updateButtonState();
+        });
+    }
+    
+    /**
+     * The first permission that is still missing, or null. Handles one permission at a time.
+     */
+    private String findMissingPermission() {
+        // Check for WRITE_SETTINGS permission on Android 6.0+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && !Settings.System.canWrite(this)) {
+            return Manifest.permission.WRITE_SETTINGS;
         }
         
-        // Update button state based on permissions
-        updateButtonState();
+        // Check for BLUETOOTH_CONNECT permission on Android 12+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S &&
+                checkSelfPermission(Manifest.permission.BLUETOOTH_CONNECT) != 
+                        android.content.pm.PackageManager.PERMISSION_GRANTED) {
+            return Manifest.permission.BLUETOOTH_CONNECT;
+        }
+        return null;
     }
     
     private void showPermissionDialog() {
@@ -138,9 +244,12 @@ public class MainActivity extends AppCompatActivity {
         super.onActivityResult(requestCode, resultCode, data);
         
         // Check if the user granted the permission
-        if (requestCode == REQUEST_WRITE_SETTINGS) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                if (Settings.System.canWrite(this)) {
+        if (requestCode == REQUEST_WRITE_SETTINGS && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            DeviceIo.run(() -> Settings.System.canWrite(this), false, granted -> {
+                if (isFinishing() || isDestroyed()) {
+                    return;
+                }
+                if (granted) {
                     Toast.makeText(this, R.string.permission_granted, Toast.LENGTH_SHORT).show();
                     
                     // Continue checking other permissions
@@ -156,7 +265,7 @@ public class MainActivity extends AppCompatActivity {
                             .setNegativeButton(android.R.string.cancel, null)
                             .show();
                 }
-            }
+            });
         }
     }
     
@@ -167,232 +276,252 @@ public class MainActivity extends AppCompatActivity {
         if (requestCode == REQUEST_BLUETOOTH_PERMISSIONS) {
             if (grantResults.length > 0 && grantResults[0] == android.content.pm.PackageManager.PERMISSION_GRANTED) {
                 Toast.makeText(this, R.string.bluetooth_permission_granted, Toast.LENGTH_SHORT).show();
+                // The state cache can now listen for Bluetooth changes
+                DeviceStateCache.getInstance(this).onPermissionsChanged();
             } else {
                 Toast.makeText(this, R.string.bluetooth_permission_denied, Toast.LENGTH_SHORT).show();
             }
             
             // Continue to check other permissions or update UI
-            updateButtonState();
+            refreshPermissions();
         }
     }
     
-    // Tracks which settings need to be fixed
-    private boolean needToFixAirplaneMode = false;
-    private boolean needToFixBluetooth = false;
-    private boolean needToFixWifi = false;
-    private boolean needToFixMobileNetwork = false;
+    // Progress of the current fix, persisted so it survives the process being killed
+    private FixSession fixSession;
+    
+    // Applies the registered setting handlers
+    private FixPipeline fixPipeline;
+    
+    // Watches the guided settings while the user is on the checklist or in the Settings app
+    private GuidedReturn guidedReturn;
     
-    // Tracks which settings we attempted to fix
-    private boolean attemptedToFixAirplaneMode = false;
-    private boolean attemptedToFixBluetooth = false;
-    private boolean attemptedToFixWifi = false;
-    private boolean attemptedToFixMobileNetwork = false;
+    // The saved profile that the current fix is applying
+    private SettingsManager.Profile profile;
     
-    // Tracks which settings have been successful
-    private boolean soundSuccess = false;
-    private boolean earpieceSuccess = false;
-    private boolean airplaneModeSuccess = false;
-    private boolean bluetoothSuccess = false;
-    private boolean wifiSuccess = false;
-    private boolean mobileNetworkSuccess = false;
+    // Flag to track if a device state snapshot is still being captured
+    private boolean isCapturingState = false;
+    
+    // Flag to track if the automatic batch is still running
+    private boolean isApplyingAutomatic = false;
+    
+    // Flag to track if the guided settings are still being verified before the checklist opens
+    private boolean isStartingGuided = false;
+    
+    // Last result of the background permission check
+    private boolean hasPermissions = false;
+    
+    /**
+     * Whether a background step of the fix is running; its callback continues the process
+     */
+    private boolean isBusy() {
+        return isCapturingState || isApplyingAutomatic || isStartingGuided;
+    }
     
     private void fixSettings() {
+        // Ignore repeated taps while the previous one is still being worked on
+        if (isBusy() || fixSession == null) {
+            return;
+        }
+        
         try {
-            // Start the fixing process
-            isFixingSettings = true;
-            
-            Log.d("MainActivity", "Attempting to fix settings with values: " +
-                    "Airplane Mode=" + settingsManager.getAirplaneMode() +
-                    ", Bluetooth=" + settingsManager.getBluetooth() +
-                    ", Wifi=" + settingsManager.getWifi() + 
-                    ", SoundVolume=" + settingsManager.getSoundVolume() +
-                    ", EarpieceVolume=" + settingsManager.getEarpieceVolume());
-            
-            // Reset all status flags
-            resetSettingsStatus();
+            // Use the same profile for the whole fix, even if it is edited meanwhile
+            profile = getSettingsManager().getProfile();
+            Log.d("MainActivity", "Attempting to fix settings with values: " + profile);
             
-            // First, set audio settings - these are most likely to work and don't require dialogs
-            soundSuccess = deviceSettingsManager.setSoundVolume(settingsManager.getSoundVolume());
-            earpieceSuccess = deviceSettingsManager.setEarpieceVolume(settingsManager.getEarpieceVolume());
+            // Start the fixing process, this also resets all status flags
+            getFixSession().start(profile.getVersion());
+            beginFixTiming();
             
-            // Determine which settings need to be fixed through dialogs only if they don't match desired state
-            boolean wantAirplaneMode = settingsManager.getAirplaneMode();
-            boolean currentAirplaneMode = deviceSettingsManager.isAirplaneModeEnabled();
-            needToFixAirplaneMode = (wantAirplaneMode != currentAirplaneMode);
-            Log.d("MainActivity", "Airplane mode: current=" + currentAirplaneMode + ", desired=" + wantAirplaneMode + ", need fix=" + needToFixAirplaneMode);
-            
-            // If airplane mode is enabled (or will be enabled), we should skip mobile data checks
-            // because mobile data can't be enabled in airplane mode
-            if (currentAirplaneMode || wantAirplaneMode) {
-                deviceSettingsManager.setSkipMobileDataCheck(true);
-                // Don't try to fix mobile network if airplane mode is enabled or needs to be enabled
-                needToFixMobileNetwork = false;
-                
-                // We should not consider mobile network as success if we're skipping it
-                // Only mark as success if airplane mode is actually enabled AND we want mobile data disabled
-                boolean wantMobileData = settingsManager.getMobileNetwork();
-                mobileNetworkSuccess = !wantMobileData; // Only success if we want it disabled anyway
-                
-                Log.d("MainActivity", "Skipping mobile data check because of airplane mode. Mobile data success=" + mobileNetworkSuccess);
-            } else {
-                deviceSettingsManager.setSkipMobileDataCheck(false);
-                
-                // Only check and potentially fix mobile network if airplane mode is not involved
-                boolean wantMobileData = settingsManager.getMobileNetwork();
-                boolean currentMobileData = deviceSettingsManager.isMobileDataEnabled();
-                needToFixMobileNetwork = (wantMobileData != currentMobileData);
-                Log.d("MainActivity", "Mobile data: current=" + currentMobileData + ", desired=" + wantMobileData + ", need fix=" + needToFixMobileNetwork);
+            // Query all device settings at once in the background, the result comes back on the UI thread
+            captureDeviceState();
+        } catch (Exception e) {
+            isCapturingState = false;
+            abortFix(e);
+        }
+    }
+    
+    private void captureDeviceState() {
+        isCapturingState = true;
+        updateButtonState();
+        if (BuildConfig.FAKE_STATE_ALLOWED && getIntent().getBooleanExtra(EXTRA_FAKE_STATE, false)) {
+            fixButton.post(() -> onDeviceStateCaptured(DeviceStateSnapshot.matchingProfile(profile)));
+            return;
+        }
+        DeviceStateSnapshot.capture(getDeviceController(), this::onDeviceStateCaptured);
+    }
+    
+    /**
+     * Work out which settings drifted from the saved values using a single snapshot
+     */
+    private void onDeviceStateCaptured(DeviceStateSnapshot snapshot) {
+        // The user may have left the screen while the probes were running,
+        // the session stays saved and the next onResume() picks it up again
+        if (isFinishing() || isDestroyed() || !getFixSession().isActive()) {
+            isCapturingState = false;
+            return;
+        }
+        
+        // The handlers compare in the background, capturing only ends once drift is known
+        getFixPipeline().diagnose(profile, snapshot, getFixSession(), diagnosed -> {
+            isCapturingState = false;
+            if (isFinishing() || isDestroyed() || !getFixSession().isActive()) {
+                return;
             }
-            
-            boolean wantWifi = settingsManager.getWifi();
-            boolean currentWifi = deviceSettingsManager.isWifiEnabled();
-            needToFixWifi = (wantWifi != currentWifi);
-            Log.d("MainActivity", "WiFi: current=" + currentWifi + ", desired=" + wantWifi + ", need fix=" + needToFixWifi);
-            
-            // Only apply Bluetooth changes if needed
-            boolean wantBluetooth = settingsManager.getBluetooth();
-            boolean currentBluetooth = deviceSettingsManager.isBluetoothEnabled();
-            needToFixBluetooth = (wantBluetooth != currentBluetooth);
-            Log.d("MainActivity", "Bluetooth: current=" + currentBluetooth + ", desired=" + wantBluetooth + ", need fix=" + needToFixBluetooth);
-            
-            if (!needToFixBluetooth) {
-                // Already in correct state
-                bluetoothSuccess = true;
-                Log.d("MainActivity", "Bluetooth already in desired state, skipping");
+            try {
+                if (!diagnosed) {
+                    throw new IllegalStateException("Diagnosis failed");
+                }
+                FixMetrics.getInstance(this).recordMilestone(FixMetrics.DIAGNOSED);
+                getFixPipeline().logDrift(EventLog.getInstance(this), profile, getFixSession());
+                runAutomaticFixes();
+            } catch (Exception e) {
+                abortFix(e);
             }
-            // If it needs fixing, it will be handled in processNextSetting()
+        });
+    }
+    
+    /**
+     * Apply everything that doesn't need the user in one background batch, then move on to the guided steps
+     */
+    private void runAutomaticFixes() {
+        isApplyingAutomatic = true;
+        updateButtonState();
+        getFixPipeline().runAutomaticBatch(profile, getFixSession(), () -> {
+            isApplyingAutomatic = false;
+            FixMetrics.getInstance(this).recordMilestone(FixMetrics.AUTOMATIC_DONE);
+            if (isFinishing() || isDestroyed() || !getFixSession().isActive()) {
+                return;
+            }
+            updateButtonState();
             
-            // Check if all settings are already in desired state
-            if (!needToFixAirplaneMode && !needToFixWifi && !needToFixMobileNetwork && 
-                !needToFixBluetooth && soundSuccess && earpieceSuccess) {
+            // Check if all settings were already in desired state
+            if (!getFixPipeline().hasDrift(getFixSession()) && getFixPipeline().allAttemptedSucceeded(getFixSession())) {
                 // All settings are already as desired, show success and skip the process
                 Toast.makeText(this, getString(R.string.all_settings_already_correct), Toast.LENGTH_LONG).show();
                 showSuccessAnimation();
-                isFixingSettings = false;
+                getFixSession().finish();
+                endFixTiming(FixMetrics.OUTCOME_ALREADY_CORRECT);
                 return;
             }
             
-            // Start the sequential settings process
+            // Start the sequential guided process
             processNextSetting();
-            
-        } catch (Exception e) {
-            isFixingSettings = false; // Reset flag on error
-            Log.e("MainActivity", "Error fixing settings: " + e.getMessage(), e);
-            Toast.makeText(this, getString(R.string.error_fixing_settings), Toast.LENGTH_LONG).show();
-        }
-    }
-    
-    private void resetSettingsStatus() {
-        // Reset all success flags
-        soundSuccess = false;
-        earpieceSuccess = false;
-        airplaneModeSuccess = false;
-        bluetoothSuccess = false;
-        wifiSuccess = false;
-        mobileNetworkSuccess = false;
-        
-        // Reset which settings need fixing
-        needToFixAirplaneMode = false;
-        needToFixBluetooth = false;
-        needToFixWifi = false;
-        needToFixMobileNetwork = false;
-        
-        // Reset attempted fix flags
-        attemptedToFixAirplaneMode = false;
-        attemptedToFixBluetooth = false;
-        attemptedToFixWifi = false;
-        attemptedToFixMobileNetwork = false;
+        });
     }
     
     private void processNextSetting() {
-        // Process each setting one at a time, but only if needed
-        // Priority order: 1. Airplane Mode 2. Mobile Network 3. WiFi 4. Bluetooth
-        if (needToFixAirplaneMode) {
-            needToFixAirplaneMode = false;
-            attemptedToFixAirplaneMode = true;
-            // Show airplane mode dialog only when current state doesn't match desired state
-            airplaneModeSuccess = deviceSettingsManager.setAirplaneMode(settingsManager.getAirplaneMode());
-        } else if (needToFixMobileNetwork) {
-            needToFixMobileNetwork = false;
-            attemptedToFixMobileNetwork = true;
-            // Show mobile network dialog only when current state doesn't match desired state
-            mobileNetworkSuccess = deviceSettingsManager.setMobileNetwork(settingsManager.getMobileNetwork());
-        } else if (needToFixWifi) {
-            needToFixWifi = false;
-            attemptedToFixWifi = true;
-            // Show WiFi dialog only when current state doesn't match desired state
-            wifiSuccess = deviceSettingsManager.setWifi(settingsManager.getWifi());
-        } else if (needToFixBluetooth) {
-            needToFixBluetooth = false;
-            attemptedToFixBluetooth = true;
-            // Process Bluetooth fix if needed and permissions allow
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                if (checkSelfPermission(Manifest.permission.BLUETOOTH_CONNECT) == 
-                        android.content.pm.PackageManager.PERMISSION_GRANTED) {
-                    bluetoothSuccess = deviceSettingsManager.setBluetooth(settingsManager.getBluetooth());
+        // Open the checklist with every setting that needs the user, or show the final status when there is none left
+        isStartingGuided = true;
+        updateButtonState();
+        getFixPipeline().runGuided(profile, getFixSession(), settings -> {
+            isStartingGuided = false;
+            if (isFinishing() || isDestroyed() || !getFixSession().isActive()) {
+                return;
+            }
+            updateButtonState();
+            try {
+                if (!settings.isEmpty()) {
+                    FixMetrics.getInstance(this).markGuidedStart();
+                    openGuidedChecklist(settings);
+                } else {
+                    finishSettingsProcess();
                 }
-            } else {
-                // For older Android versions, direct control works
-                bluetoothSuccess = deviceSettingsManager.setBluetooth(settingsManager.getBluetooth());
+            } catch (Exception e) {
+                abortFix(e);
             }
-            processNextSetting(); // Continue to next setting immediately since this doesn't show dialog
-        } else {
-            // All settings processed, show final status
-            finishSettingsProcess();
+        });
+    }
+    
+    private void openGuidedChecklist(List<Setting> settings) {
+        String[] names = new String[settings.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = settings.get(i).name();
         }
+        startActivity(new Intent(this, GuidedChecklistActivity.class)
+                .putExtra(GuidedChecklistActivity.EXTRA_SETTINGS, names)
+                .putExtra(GuidedChecklistActivity.EXTRA_PROFILE_VERSION, getFixSession().getProfileVersion()));
     }
     
-    // Flag to track if we're in the process of fixing settings
-    private boolean isFixingSettings = false;
+    private void abortFix(Exception e) {
+        getFixSession().finish(); // Reset session on error
+        endFixTiming(FixMetrics.OUTCOME_ERROR);
+        updateButtonState();
+        Log.e("MainActivity", "Error fixing settings: " + e.getMessage(), e);
+        Toast.makeText(this, getString(R.string.error_fixing_settings), Toast.LENGTH_LONG).show();
+    }
     
     @Override
     protected void onResume() {
         super.onResume();
+        // Back from the guided checklist, by Back, Done or GuidedReturn
+        getGuidedReturn().stop();
+        runAfterFirstDraw(this::continueFix);
+    }
+    
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // The user is leaving for the guided checklist, come back on our own once it is done
+        if (fixSession != null && fixSession.isActive() && fixSession.isDiagnosed() && !isBusy() && profile != null) {
+            getGuidedReturn().watch(getFixPipeline().guidedInProgress(fixSession), profile);
+        }
+    }
+    
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (guidedReturn != null) {
+            guidedReturn.stop();
+        }
+    }
+    
+    private void continueFix() {
         // Check permissions again on resume, in case user granted them in settings
-        updateButtonState();
-        
-        // If we're in the process of fixing settings, continue to the next one
-        if (isFixingSettings) {
-            processNextSetting();
+        refreshPermissions();
+        loadFixSession(this::resumeFixSession);
+    }
+    
+    private void resumeFixSession() {
+        // If we're in the process of fixing settings, continue where we left off
+        // (unless a background step is still running, its callback continues the process)
+        if (getFixSession().isActive() && !isBusy()) {
+            if (profile == null) {
+                // The process was restarted, the session is only kept for the profile it was started with.
+                // loadFixSession() already read the profile, this comes from memory
+                profile = getSettingsManager().getProfile();
+            }
+            if (!getFixSession().isDiagnosed()) {
+                // The previous process died before drift was worked out
+                captureDeviceState();
+            } else if (getFixPipeline().hasPendingAutomatic(getFixSession())) {
+                runAutomaticFixes();
+            } else {
+                // Back from the guided checklist
+                FixMetrics.getInstance(this).recordGuidedReturn();
+                processNextSetting();
+            }
         }
     }
     
     private void finishSettingsProcess() {
-        // Reset the flag since we're done
-        isFixingSettings = false;
-        
         // Log final results
-        Log.d("MainActivity", "Settings applied: " +
-                "Airplane Mode=" + airplaneModeSuccess +
-                ", Bluetooth=" + bluetoothSuccess +
-                ", Wifi=" + wifiSuccess + 
-                ", Mobile Data=" + mobileNetworkSuccess +
-                ", SoundVolume=" + soundSuccess +
-                ", EarpieceVolume=" + earpieceSuccess);
+        Log.d("MainActivity", "Settings applied: " + getFixSession());
         
         // A stricter definition of success - all attempted settings must succeed
-        boolean allRequiredSettingsFixed = true;
-        
-        // Check each setting that was attempted
-        if (!soundSuccess) allRequiredSettingsFixed = false;
-        if (!earpieceSuccess) allRequiredSettingsFixed = false;
-        
-        // Only count these if we attempted to fix them
-        if (attemptedToFixAirplaneMode && !airplaneModeSuccess) allRequiredSettingsFixed = false;
-        if (attemptedToFixWifi && !wifiSuccess) allRequiredSettingsFixed = false;
-        if (attemptedToFixMobileNetwork && !mobileNetworkSuccess) allRequiredSettingsFixed = false;
-        if (attemptedToFixBluetooth && !bluetoothSuccess) allRequiredSettingsFixed = false;
+        boolean allRequiredSettingsFixed = getFixPipeline().allAttemptedSucceeded(getFixSession());
         
         // Add debug logging
-        Log.d("MainActivity", "Fix success check: all=" + allRequiredSettingsFixed + 
-                ", attempted airplane=" + attemptedToFixAirplaneMode + 
-                ", attempted wifi=" + attemptedToFixWifi + 
-                ", attempted mobile=" + attemptedToFixMobileNetwork + 
-                ", attempted bluetooth=" + attemptedToFixBluetooth);
+        Log.d("MainActivity", "Fix success check: all=" + allRequiredSettingsFixed);
         
         // Check if at least one setting was successfully fixed
-        boolean anySuccess = soundSuccess || earpieceSuccess || wifiSuccess || 
-                             bluetoothSuccess || airplaneModeSuccess || mobileNetworkSuccess;
+        boolean anySuccess = getFixSession().anySuccessful();
+        
+        // Keep the history for the caregiver, then reset the session since we're done
+        getFixPipeline().logOutcome(EventLog.getInstance(this), profile, getFixSession());
+        getFixSession().finish();
+        endFixTiming(allRequiredSettingsFixed ? FixMetrics.OUTCOME_FIXED :
+                anySuccess ? FixMetrics.OUTCOME_PARTIALLY_FIXED : FixMetrics.OUTCOME_NOT_FIXED);
         
         // Show appropriate success message
         if (allRequiredSettingsFixed) {
@@ -405,6 +534,21 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
+    private void beginFixTiming() {
+        FixMetrics.getInstance(this).beginRun();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(TRACE_FIX, TRACE_FIX_COOKIE);
+        }
+    }
+    
+    private void endFixTiming(String outcome) {
+        FixMetrics.getInstance(this).endRun(outcome);
+        // A no-op if the section was begun in a process that has since died
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(TRACE_FIX, TRACE_FIX_COOKIE);
+        }
+    }
+    
     private void showSuccessAnimation() {
         // This would be a good place to add a simple animation or a fullscreen success message
         // For now, we'll just rely on the Toast message, but we could add a simple visual feedback
@@ -0,0 +1,63 @@
+package com.example.grannyaid;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.RestrictionsManager;
+import android.os.Bundle;
+import android.util.Log;
+
+/**
+ * Applies the profiles an administrator pushes through managed configurations (app restrictions),
+ * at every start and whenever the configuration changes. Applying is idempotent, so an unchanged
+ * configuration costs one binder call and no write.
+ */
+public final class ManagedConfiguration {
+    private static final String TAG = "ManagedConfiguration";
+
+    private static boolean registered = false;
+
+    private ManagedConfiguration() {
+    }
+
+    /**
+     * Apply the current configuration and listen for changes while the process lives.
+     * The change broadcast is only delivered to receivers registered at runtime.
+     */
+    public static synchronized void start(Context context) {
+        Context appContext = context.getApplicationContext();
+        if (!registered) {
+            appContext.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    apply(appContext);
+                }
+            }, new IntentFilter(Intent.ACTION_APPLICATION_RESTRICTIONS_CHANGED));
+            registered = true;
+        }
+        apply(appContext);
+    }
+
+    private static void apply(Context context) {
+        DeviceIo.execute(() -> {
+            try {
+                RestrictionsManager restrictionsManager = context.getSystemService(RestrictionsManager.class);
+                Bundle restrictions = restrictionsManager != null ?
+                        restrictionsManager.getApplicationRestrictions() : null;
+                if (restrictions == null || restrictions.isEmpty()) {
+                    return;
+                }
+                ProfileImporter.Batch batch = ProfileImporter.fromRestrictions(restrictions);
+                if (batch != null) {
+                    ProfileImporter.apply(context, batch);
+                }
+            } catch (IllegalArgumentException e) {
+                // Keep the profiles we have rather than half of a broken configuration
+                Log.e(TAG, "Ignoring invalid managed configuration: " + e.getMessage());
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to apply managed configuration: " + e.getMessage(), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.grannyaid;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.os.Build;
+import android.provider.Settings;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+
+/**
+ * Reads the user's mobile data switch, for the SIM that carries data. Which network is active
+ * says nothing about it: with Wi-Fi connected, mobile data is on but unused.
+ *
+ * No single way of reading the switch works on every phone, so the strategies are tried in order:
+ * TelephonyManager.isDataEnabled() for the default data subscription, the Settings.Global keys
+ * (per subscription, then global), and the hidden ConnectivityManager.getMobileDataEnabled().
+ * The first strategy that answers is remembered for the life of the process, so later probes
+ * cost a single call; if it stops answering the chain is walked again.
+ * A direct write is confirmed with probeReported() instead, which never reads the keys the app writes.
+ * Makes binder calls, call it off the main thread.
+ */
+final class MobileDataProbe {
+    private static final String TAG = "MobileDataProbe";
+
+    private static final int STRATEGY_TELEPHONY = 0;
+    private static final int STRATEGY_SETTINGS = 1;
+    private static final int STRATEGY_REFLECTION = 2;
+    private static final String[] STRATEGY_NAMES = {"telephony", "settings", "reflection"};
+
+    private static final int NO_STRATEGY = -1;
+
+    private static MobileDataProbe instance;
+
+    private final Context context;
+
+    private volatile int strategy = NO_STRATEGY;
+
+    // Looked up once; reflection can't be made cheaper than this
+    private Method getMobileDataEnabled;
+    private boolean reflectionUnavailable = false;
+
+    static synchronized MobileDataProbe getInstance(Context context) {
+        if (instance == null) {
+            instance = new MobileDataProbe(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MobileDataProbe(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Whether mobile data is switched on, or null if no strategy can tell on this phone
+     */
+    Boolean probe() {
+        int known = strategy;
+        if (known != NO_STRATEGY) {
+            Boolean enabled = tryStrategy(known);
+            if (enabled != null) {
+                return enabled;
+            }
+            Log.w(TAG, STRATEGY_NAMES[known] + " no longer answers, trying the others");
+            strategy = NO_STRATEGY;
+        }
+        for (int candidate = 0; candidate < STRATEGY_NAMES.length; candidate++) {
+            if (candidate == known) {
+                continue;
+            }
+            Boolean enabled = tryStrategy(candidate);
+            if (enabled != null) {
+                strategy = candidate;
+                Log.i(TAG, "Reading mobile data with " + STRATEGY_NAMES[candidate]);
+                return enabled;
+            }
+        }
+        Log.w(TAG, "No way to read mobile data on this phone");
+        return null;
+    }
+
+    /**
+     * Whether the phone's data service reports mobile data as on, or null if it can't be asked.
+     * Skips the Settings.Global keys: right after the app wrote them they read back as written,
+     * whether or not telephony acted on the value.
+     */
+    Boolean probeReported() {
+        Boolean enabled = tryStrategy(STRATEGY_TELEPHONY);
+        return enabled != null ? enabled : tryStrategy(STRATEGY_REFLECTION);
+    }
+
+    private Boolean tryStrategy(int candidate) {
+        try {
+            switch (candidate) {
+                case STRATEGY_TELEPHONY:
+                    return probeTelephony();
+                case STRATEGY_SETTINGS:
+                    return probeSettings();
+                case STRATEGY_REFLECTION:
+                    return probeReflection();
+                default:
+                    return null;
+            }
+        } catch (Exception e) {
+            // SecurityException where a permission or a readable key is missing, or a hidden API is blocked
+            Log.d(TAG, STRATEGY_NAMES[candidate] + " failed: " + e);
+            return null;
+        }
+    }
+
+    private Boolean probeTelephony() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return null;
+        }
+        TelephonyManager telephonyManager = context.getSystemService(TelephonyManager.class);
+        if (telephonyManager == null) {
+            return null;
+        }
+        int subId = SubscriptionManager.getDefaultDataSubscriptionId();
+        if (subId != SubscriptionManager.INVALID_SUBSCRIPTION_ID) {
+            telephonyManager = telephonyManager.createForSubscriptionId(subId);
+        }
+        return telephonyManager.isDataEnabled();
+    }
+
+    private Boolean probeSettings() {
+        ContentResolver resolver = context.getContentResolver();
+        int subId = SubscriptionManager.getDefaultDataSubscriptionId();
+        String value = null;
+        if (subId != SubscriptionManager.INVALID_SUBSCRIPTION_ID) {
+            value = Settings.Global.getString(resolver, DeviceCapabilities.GLOBAL_MOBILE_DATA + subId);
+        }
+        if (value == null) {
+            value = Settings.Global.getString(resolver, DeviceCapabilities.GLOBAL_MOBILE_DATA);
+        }
+        if (value == null) {
+            return null;
+        }
+        return !"0".equals(value.trim());
+    }
+
+    private synchronized Boolean probeReflection() throws Exception {
+        if (reflectionUnavailable) {
+            return null;
+        }
+        if (getMobileDataEnabled == null) {
+            try {
+                getMobileDataEnabled = ConnectivityManager.class.getDeclaredMethod("getMobileDataEnabled");
+                getMobileDataEnabled.setAccessible(true);
+            } catch (NoSuchMethodException | SecurityException e) {
+                reflectionUnavailable = true;
+                throw e;
+            }
+        }
+        ConnectivityManager connectivityManager = context.getSystemService(ConnectivityManager.class);
+        return (Boolean) getMobileDataEnabled.invoke(connectivityManager);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.grannyaid;
+
+import android.util.Log;
+
+import java.util.concurrent.CompletableFuture;
+
+public class MobileNetworkHandler implements SettingHandler {
+    private static final String TAG = "MobileNetworkHandler";
+
+    private final DeviceController deviceController;
+
+    public MobileNetworkHandler(DeviceController deviceController) {
+        this.deviceController = deviceController;
+    }
+
+    @Override
+    public Setting getSetting() {
+        return Setting.MOBILE_NETWORK;
+    }
+
+    @Override
+    public boolean probe(SettingsManager.Profile profile, DeviceStateSnapshot snapshot) {
+        // If airplane mode is enabled (or will be enabled), we should skip mobile data checks
+        // because mobile data can't be enabled in airplane mode
+        if (snapshot.isAirplaneModeEnabled() || profile.getAirplaneMode()) {
+            deviceController.setSkipMobileDataCheck(true);
+            Log.d(TAG, "Skipping mobile data check because of airplane mode");
+            return false;
+        }
+        deviceController.setSkipMobileDataCheck(false);
+        return profile.getMobileNetwork() != snapshot.isMobileDataEnabled();
+    }
+
+    @Override
+    public boolean isAutomatic() {
+        // Apps can't switch mobile data, the user is guided to Settings
+        // (unless WRITE_SECURE_SETTINGS was granted over adb)
+        return deviceController.canSetMobileNetworkDirectly();
+    }
+
+    @Override
+    public boolean apply(SettingsManager.Profile profile) {
+        if (deviceController.canSetMobileNetworkDirectly()) {
+            return deviceController.setMobileNetworkDirectly(profile.getMobileNetwork());
+        }
+        return deviceController.setMobileNetwork(profile.getMobileNetwork());
+    }
+
+    @Override
+    public CompletableFuture<Boolean> confirm(SettingsManager.Profile profile) {
+        // Only reached on the direct path, wait for the system to report the new state
+        return deviceController.confirmState(Setting.MOBILE_NETWORK, profile.getMobileNetwork())
+                .thenApply(confirmed -> {
+                    if (!confirmed) {
+                        deviceController.disableMobileNetworkDirectly();
+                    }
+                    return confirmed;
+                });
+    }
+
+    @Override
+    public boolean verify(SettingsManager.Profile profile) {
+        return deviceController.isMobileDataEnabled() == profile.getMobileNetwork();
+    }
+
+    @Override
+    public int getGuidedInstruction(SettingsManager.Profile profile) {
+        return profile.getMobileNetwork() ? R.string.guided_step_mobile_data_enable : R.string.guided_step_mobile_data_disable;
+    }
+}
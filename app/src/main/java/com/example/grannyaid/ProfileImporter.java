@@ -0,0 +1,272 @@
+package com.example.grannyaid;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Provisions profiles from a managed configuration or from a profile file, so a caregiver
+ * setting up many phones doesn't have to go through the settings screen on each.
+ *
+ * A profile file is JSON:
+ * <pre>
+ * {
+ *   "active": "home",
+ *   "profiles": {
+ *     "home":  { "airplaneMode": false, "bluetooth": true, "wifi": true, "mobileNetwork": true,
+ *                "soundVolume": 70, "earpieceVolume": 70, "autoFix": true },
+ *     "night": { "soundVolume": 30 }
+ *   }
+ * }
+ * </pre>
+ * Fields left out take the same defaults as a new profile. The whole batch is validated before
+ * anything is stored, then stored with a single write; profiles that are already stored with the
+ * same values are skipped, so applying the same batch again changes nothing.
+ */
+public final class ProfileImporter {
+    private static final String TAG = "ProfileImporter";
+
+    // Larger profile files are rejected before parsing
+    static final int MAX_FILE_BYTES = 256 * 1024;
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-z0-9_-]{1,32}");
+
+    private static final String FIELD_ACTIVE = "active";
+    private static final String FIELD_PROFILES = "profiles";
+    private static final String FIELD_AIRPLANE_MODE = "airplaneMode";
+    private static final String FIELD_BLUETOOTH = "bluetooth";
+    private static final String FIELD_WIFI = "wifi";
+    private static final String FIELD_MOBILE_NETWORK = "mobileNetwork";
+    private static final String FIELD_SOUND_VOLUME = "soundVolume";
+    private static final String FIELD_EARPIECE_VOLUME = "earpieceVolume";
+    private static final String FIELD_AUTO_FIX = "autoFix";
+
+    // Keys of res/xml/app_restrictions.xml
+    static final String RESTRICTION_PROFILES_JSON = "profiles_json";
+    static final String RESTRICTION_PROFILE_NAME = "profile_name";
+    static final String RESTRICTION_AIRPLANE_MODE = "airplane_mode";
+    static final String RESTRICTION_BLUETOOTH = "bluetooth";
+    static final String RESTRICTION_WIFI = "wifi";
+    static final String RESTRICTION_MOBILE_NETWORK = "mobile_network";
+    static final String RESTRICTION_SOUND_VOLUME = "sound_volume";
+    static final String RESTRICTION_EARPIECE_VOLUME = "earpiece_volume";
+    static final String RESTRICTION_AUTO_FIX = "auto_fix";
+
+    /**
+     * Validated profiles ready to be stored
+     */
+    public static final class Batch {
+        final Map<String, SettingsManager.Profile> profiles;
+        // Null keeps the current active profile
+        final String activeName;
+
+        Batch(Map<String, SettingsManager.Profile> profiles, String activeName) {
+            this.profiles = profiles;
+            this.activeName = activeName;
+        }
+
+        public int size() {
+            return profiles.size();
+        }
+    }
+
+    private ProfileImporter() {
+    }
+
+    /**
+     * Parse and validate a profile file
+     *
+     * @throws IllegalArgumentException if the file is not a valid profile file
+     */
+    public static Batch parseJson(String json) {
+        try {
+            JSONObject root = new JSONObject(json);
+            checkKnownFields(root, "file", FIELD_ACTIVE, FIELD_PROFILES);
+
+            JSONObject profilesJson = root.optJSONObject(FIELD_PROFILES);
+            if (profilesJson == null || profilesJson.length() == 0) {
+                throw new IllegalArgumentException("No profiles in file");
+            }
+            Map<String, SettingsManager.Profile> profiles = new LinkedHashMap<>();
+            Iterator<String> names = profilesJson.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                checkName(name);
+                JSONObject profileJson = profilesJson.optJSONObject(name);
+                if (profileJson == null) {
+                    throw new IllegalArgumentException("Profile " + name + " is not an object");
+                }
+                profiles.put(name, parseProfile(name, profileJson));
+            }
+
+            String activeName = null;
+            if (root.has(FIELD_ACTIVE)) {
+                Object active = root.get(FIELD_ACTIVE);
+                if (!(active instanceof String)) {
+                    throw new IllegalArgumentException("\"" + FIELD_ACTIVE + "\" must be a profile name");
+                }
+                activeName = (String) active;
+                checkName(activeName);
+            }
+            return new Batch(profiles, activeName);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Not valid JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read a managed configuration. A profiles_json value wins; otherwise the single-profile keys
+     * that are set make up one profile, which becomes the active one. Returns null if nothing is set.
+     *
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public static Batch fromRestrictions(Bundle restrictions) {
+        String json = restrictions.getString(RESTRICTION_PROFILES_JSON);
+        if (json != null && !json.trim().isEmpty()) {
+            return parseJson(json);
+        }
+
+        boolean anySet = false;
+        SettingsManager.Profile.Builder builder = new SettingsManager.Profile.Builder();
+        if (restrictions.containsKey(RESTRICTION_AIRPLANE_MODE)) {
+            builder.setAirplaneMode(restrictions.getBoolean(RESTRICTION_AIRPLANE_MODE));
+            anySet = true;
+        }
+        if (restrictions.containsKey(RESTRICTION_BLUETOOTH)) {
+            builder.setBluetooth(restrictions.getBoolean(RESTRICTION_BLUETOOTH));
+            anySet = true;
+        }
+        if (restrictions.containsKey(RESTRICTION_WIFI)) {
+            builder.setWifi(restrictions.getBoolean(RESTRICTION_WIFI));
+            anySet = true;
+        }
+        if (restrictions.containsKey(RESTRICTION_MOBILE_NETWORK)) {
+            builder.setMobileNetwork(restrictions.getBoolean(RESTRICTION_MOBILE_NETWORK));
+            anySet = true;
+        }
+        if (restrictions.containsKey(RESTRICTION_SOUND_VOLUME)) {
+            builder.setSoundVolume(checkVolume(RESTRICTION_SOUND_VOLUME,
+                    restrictions.getInt(RESTRICTION_SOUND_VOLUME)));
+            anySet = true;
+        }
+        if (restrictions.containsKey(RESTRICTION_EARPIECE_VOLUME)) {
+            builder.setEarpieceVolume(checkVolume(RESTRICTION_EARPIECE_VOLUME,
+                    restrictions.getInt(RESTRICTION_EARPIECE_VOLUME)));
+            anySet = true;
+        }
+        if (restrictions.containsKey(RESTRICTION_AUTO_FIX)) {
+            builder.setAutoFix(restrictions.getBoolean(RESTRICTION_AUTO_FIX));
+            anySet = true;
+        }
+        if (!anySet) {
+            return null;
+        }
+
+        String name = restrictions.getString(RESTRICTION_PROFILE_NAME, SettingsManager.PROFILE_HOME);
+        checkName(name);
+        Map<String, SettingsManager.Profile> profiles = new LinkedHashMap<>();
+        profiles.put(name, builder.build());
+        return new Batch(profiles, name);
+    }
+
+    /**
+     * Store a validated batch and re-arm the watchdog if anything changed.
+     * Reads the profile store, so call it off the main thread.
+     *
+     * @return Number of profiles that were added or changed
+     */
+    public static int apply(Context context, Batch batch) {
+        SettingsManager settingsManager = new SettingsManager(context);
+        String previousActive = settingsManager.getActiveProfileName();
+        int changed = settingsManager.importProfiles(batch.profiles, batch.activeName);
+        if (changed > 0 || !settingsManager.getActiveProfileName().equals(previousActive)) {
+            // Auto fix may have been switched on or off
+            DriftWatchdog.arm(context);
+        }
+        Log.d(TAG, "Imported " + batch.size() + " profiles, " + changed + " changed");
+        return changed;
+    }
+
+    private static SettingsManager.Profile parseProfile(String name, JSONObject json) throws JSONException {
+        checkKnownFields(json, "profile " + name, FIELD_AIRPLANE_MODE, FIELD_BLUETOOTH, FIELD_WIFI,
+                FIELD_MOBILE_NETWORK, FIELD_SOUND_VOLUME, FIELD_EARPIECE_VOLUME, FIELD_AUTO_FIX);
+        SettingsManager.Profile.Builder builder = new SettingsManager.Profile.Builder();
+        if (json.has(FIELD_AIRPLANE_MODE)) {
+            builder.setAirplaneMode(getBoolean(json, name, FIELD_AIRPLANE_MODE));
+        }
+        if (json.has(FIELD_BLUETOOTH)) {
+            builder.setBluetooth(getBoolean(json, name, FIELD_BLUETOOTH));
+        }
+        if (json.has(FIELD_WIFI)) {
+            builder.setWifi(getBoolean(json, name, FIELD_WIFI));
+        }
+        if (json.has(FIELD_MOBILE_NETWORK)) {
+            builder.setMobileNetwork(getBoolean(json, name, FIELD_MOBILE_NETWORK));
+        }
+        if (json.has(FIELD_SOUND_VOLUME)) {
+            builder.setSoundVolume(getVolume(json, name, FIELD_SOUND_VOLUME));
+        }
+        if (json.has(FIELD_EARPIECE_VOLUME)) {
+            builder.setEarpieceVolume(getVolume(json, name, FIELD_EARPIECE_VOLUME));
+        }
+        if (json.has(FIELD_AUTO_FIX)) {
+            builder.setAutoFix(getBoolean(json, name, FIELD_AUTO_FIX));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reject unknown fields, so a misspelt setting is reported instead of silently left at its default
+     */
+    private static void checkKnownFields(JSONObject json, String where, String... known) {
+        Iterator<String> keys = json.keys();
+        outer:
+        while (keys.hasNext()) {
+            String key = keys.next();
+            for (String field : known) {
+                if (field.equals(key)) {
+                    continue outer;
+                }
+            }
+            throw new IllegalArgumentException("Unknown field \"" + key + "\" in " + where);
+        }
+    }
+
+    private static void checkName(String name) {
+        if (!NAME_PATTERN.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid profile name \"" + name +
+                    "\", use 1-32 lowercase letters, digits, '_' or '-'");
+        }
+    }
+
+    private static boolean getBoolean(JSONObject json, String profile, String field) throws JSONException {
+        Object value = json.get(field);
+        if (!(value instanceof Boolean)) {
+            throw new IllegalArgumentException(profile + "." + field + " must be true or false");
+        }
+        return (Boolean) value;
+    }
+
+    private static int getVolume(JSONObject json, String profile, String field) throws JSONException {
+        Object value = json.get(field);
+        if (!(value instanceof Integer)) {
+            throw new IllegalArgumentException(profile + "." + field + " must be a whole number");
+        }
+        return checkVolume(profile + "." + field, (Integer) value);
+    }
+
+    private static int checkVolume(String field, int percent) {
+        if (percent < 0 || percent > 100) {
+            throw new IllegalArgumentException(field + " must be between 0 and 100, not " + percent);
+        }
+        return percent;
+    }
+}
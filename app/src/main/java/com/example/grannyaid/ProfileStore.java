@@ -0,0 +1,314 @@
+package com.example.grannyaid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Named profiles in one small binary file, read once and then served from memory.
+ * Every change updates memory at once and schedules a write of the whole file through
+ * AtomicFile (write to a temporary file, then rename), so a crash or power loss leaves
+ * either the old or the new file, never a torn one. Changes made while a write is
+ * pending are folded into that write.
+ *
+ * File layout, big-endian: magic, format version, last assigned profile version,
+ * active profile name, profile count, then per profile its name, version, a flags byte
+ * and the two volume percentages.
+ */
+final class ProfileStore {
+    private static final String TAG = "ProfileStore";
+
+    private static final String FILE_NAME = "profiles.bin";
+    private static final int MAGIC = 0x47415046; // "GAPF"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int FLAG_AIRPLANE_MODE = 1;
+    private static final int FLAG_BLUETOOTH = 1 << 1;
+    private static final int FLAG_WIFI = 1 << 2;
+    private static final int FLAG_MOBILE_NETWORK = 1 << 3;
+    private static final int FLAG_AUTO_FIX = 1 << 4;
+
+    // The single profile of earlier versions, migrated into the "home" profile
+    private static final String LEGACY_PREFS_NAME = "GrannyAidPrefs";
+    private static final String LEGACY_KEY_AIRPLANE_MODE = "airplane_mode";
+    private static final String LEGACY_KEY_BLUETOOTH = "bluetooth";
+    private static final String LEGACY_KEY_WIFI = "wifi";
+    private static final String LEGACY_KEY_MOBILE_NETWORK = "mobile_network";
+    private static final String LEGACY_KEY_SOUND_VOLUME = "sound_volume";
+    private static final String LEGACY_KEY_EARPIECE_VOLUME = "earpiece_volume";
+    private static final String LEGACY_KEY_AUTO_FIX = "auto_fix";
+    private static final String LEGACY_KEY_PROFILE_VERSION = "profile_version";
+
+    private static ProfileStore instance;
+
+    private final Context context;
+    private final AtomicFile file;
+
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "GrannyAid-profiles");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this
+    private boolean loaded = false;
+    private final Map<String, SettingsManager.Profile> profiles = new LinkedHashMap<>();
+    private String activeName = SettingsManager.PROFILE_HOME;
+    private long lastVersion = 0;
+    private byte[] pendingWrite;
+
+    static synchronized ProfileStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new ProfileStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Package-private so that tests can open a second store on the same file
+    ProfileStore(Context context) {
+        this.context = context;
+        this.file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    synchronized SettingsManager.Profile getActiveProfile() {
+        ensureLoaded();
+        return profiles.get(activeName);
+    }
+
+    synchronized String getActiveName() {
+        ensureLoaded();
+        return activeName;
+    }
+
+    /**
+     * The profile stored under the name, or null if there is none
+     */
+    synchronized SettingsManager.Profile getProfile(String name) {
+        ensureLoaded();
+        return profiles.get(name);
+    }
+
+    synchronized List<String> getNames() {
+        ensureLoaded();
+        return new ArrayList<>(profiles.keySet());
+    }
+
+    /**
+     * Store the profile under the name with a new version, optionally making it the active one
+     */
+    synchronized SettingsManager.Profile put(String name, SettingsManager.Profile profile, boolean activate) {
+        ensureLoaded();
+        // Versions are unique across all profiles, so a fix started for one profile never continues with another
+        SettingsManager.Profile saved = new SettingsManager.Profile.Builder(profile).build(++lastVersion);
+        profiles.put(name, saved);
+        if (activate) {
+            activeName = name;
+        }
+        scheduleWrite();
+        return saved;
+    }
+
+    /**
+     * Store every profile whose values differ from the stored one and switch to activeName,
+     * if given, with at most one write
+     *
+     * @return Number of profiles that were added or changed
+     */
+    synchronized int putAll(Map<String, SettingsManager.Profile> imported, String activeName) {
+        ensureLoaded();
+        if (activeName != null && !imported.containsKey(activeName) && !profiles.containsKey(activeName)) {
+            throw new IllegalArgumentException("Unknown active profile " + activeName);
+        }
+        int changed = 0;
+        for (Map.Entry<String, SettingsManager.Profile> entry : imported.entrySet()) {
+            SettingsManager.Profile existing = profiles.get(entry.getKey());
+            if (existing != null && existing.hasSameValues(entry.getValue())) {
+                continue;
+            }
+            profiles.put(entry.getKey(), new SettingsManager.Profile.Builder(entry.getValue()).build(++lastVersion));
+            changed++;
+        }
+        boolean activeChanged = activeName != null && !activeName.equals(this.activeName);
+        if (activeChanged) {
+            this.activeName = activeName;
+        }
+        if (changed > 0 || activeChanged) {
+            scheduleWrite();
+        }
+        return changed;
+    }
+
+    synchronized boolean setActive(String name) {
+        ensureLoaded();
+        if (!profiles.containsKey(name)) {
+            return false;
+        }
+        if (!name.equals(activeName)) {
+            activeName = name;
+            scheduleWrite();
+        }
+        return true;
+    }
+
+    /**
+     * Wait until every change made so far is in the file
+     */
+    void awaitWrites() throws InterruptedException, ExecutionException {
+        // Writes run in order on a single thread, so an empty task ends after the last of them
+        writeExecutor.submit(() -> { }).get();
+    }
+
+    private void scheduleWrite() {
+        boolean queued = pendingWrite != null;
+        pendingWrite = encode();
+        if (queued) {
+            // The queued write picks up this newer content
+            return;
+        }
+        writeExecutor.execute(() -> {
+            byte[] data;
+            synchronized (this) {
+                data = pendingWrite;
+                pendingWrite = null;
+            }
+            write(data);
+        });
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (read()) {
+            return;
+        }
+        profiles.clear();
+        migrateLegacyProfile();
+        // Write right away, so the legacy file is only dropped once the profile is safe
+        if (write(encode())) {
+            context.deleteSharedPreferences(LEGACY_PREFS_NAME);
+        }
+    }
+
+    private void migrateLegacyProfile() {
+        SharedPreferences legacy = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+        SettingsManager.Profile home = new SettingsManager.Profile.Builder()
+                .setAirplaneMode(legacy.getBoolean(LEGACY_KEY_AIRPLANE_MODE, false))
+                .setBluetooth(legacy.getBoolean(LEGACY_KEY_BLUETOOTH, true))
+                .setWifi(legacy.getBoolean(LEGACY_KEY_WIFI, true))
+                .setMobileNetwork(legacy.getBoolean(LEGACY_KEY_MOBILE_NETWORK, true))
+                .setSoundVolume(legacy.getInt(LEGACY_KEY_SOUND_VOLUME, 70))
+                .setEarpieceVolume(legacy.getInt(LEGACY_KEY_EARPIECE_VOLUME, 70))
+                .setAutoFix(legacy.getBoolean(LEGACY_KEY_AUTO_FIX, false))
+                // Keep the version, so a fix that is in progress during the update still continues
+                .build(legacy.getLong(LEGACY_KEY_PROFILE_VERSION, 0));
+        profiles.put(SettingsManager.PROFILE_HOME, home);
+        activeName = SettingsManager.PROFILE_HOME;
+        lastVersion = home.getVersion();
+        Log.d(TAG, "Migrated " + home);
+    }
+
+    private boolean read() {
+        // openRead() also rolls back a write that was cut short
+        try (DataInputStream in = new DataInputStream(file.openRead())) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a profile file");
+            }
+            int formatVersion = in.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unknown format version " + formatVersion);
+            }
+            lastVersion = in.readLong();
+            activeName = in.readUTF();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long version = in.readLong();
+                int flags = in.readUnsignedByte();
+                int soundVolume = in.readUnsignedByte();
+                int earpieceVolume = in.readUnsignedByte();
+                profiles.put(name, new SettingsManager.Profile.Builder()
+                        .setAirplaneMode((flags & FLAG_AIRPLANE_MODE) != 0)
+                        .setBluetooth((flags & FLAG_BLUETOOTH) != 0)
+                        .setWifi((flags & FLAG_WIFI) != 0)
+                        .setMobileNetwork((flags & FLAG_MOBILE_NETWORK) != 0)
+                        .setAutoFix((flags & FLAG_AUTO_FIX) != 0)
+                        .setSoundVolume(soundVolume)
+                        .setEarpieceVolume(earpieceVolume)
+                        .build(version));
+            }
+            if (!profiles.containsKey(activeName)) {
+                throw new IOException("Active profile " + activeName + " is missing");
+            }
+            return true;
+        } catch (FileNotFoundException e) {
+            // First start, or first start after the update that introduced profiles
+            return false;
+        } catch (IOException e) {
+            // The file is replaced atomically, so this only happens if it was damaged outside the app
+            Log.e(TAG, "Failed to read profiles, starting over: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(lastVersion);
+            out.writeUTF(activeName);
+            out.writeInt(profiles.size());
+            for (Map.Entry<String, SettingsManager.Profile> entry : profiles.entrySet()) {
+                SettingsManager.Profile profile = entry.getValue();
+                int flags = (profile.getAirplaneMode() ? FLAG_AIRPLANE_MODE : 0) |
+                        (profile.getBluetooth() ? FLAG_BLUETOOTH : 0) |
+                        (profile.getWifi() ? FLAG_WIFI : 0) |
+                        (profile.getMobileNetwork() ? FLAG_MOBILE_NETWORK : 0) |
+                        (profile.getAutoFix() ? FLAG_AUTO_FIX : 0);
+                out.writeUTF(entry.getKey());
+                out.writeLong(profile.getVersion());
+                out.writeByte(flags);
+                out.writeByte(profile.getSoundVolume());
+                out.writeByte(profile.getEarpieceVolume());
+            }
+        } catch (IOException e) {
+            // Can't happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private boolean write(byte[] data) {
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            out.write(data);
+            file.finishWrite(out);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write profiles: " + e.getMessage(), e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+            return false;
+        }
+    }
+}
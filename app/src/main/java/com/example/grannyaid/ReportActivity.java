@@ -0,0 +1,96 @@
+package com.example.grannyaid;
+
+import android.os.Bundle;
+import android.text.format.DateFormat;
+import android.widget.Button;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+/**
+ * Caregiver report, reached from Settings: per setting how often it drifted, at what time of day,
+ * how the fixes went and how long they took. Reads the running DriftStats, so it opens at once
+ * however long the history is.
+ */
+public class ReportActivity extends AppCompatActivity {
+
+    private TextView reportText;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_report);
+
+        reportText = findViewById(R.id.reportText);
+        Button clearButton = findViewById(R.id.clearReportButton);
+        clearButton.setOnClickListener(v -> {
+            EventLog.getInstance(this).clear();
+            loadReport();
+        });
+
+        loadReport();
+    }
+
+    private void loadReport() {
+        EventLog.getInstance(this).loadStats(stats -> {
+            if (isFinishing() || isDestroyed()) {
+                return;
+            }
+            reportText.setText(format(stats));
+        });
+    }
+
+    private String format(DriftStats stats) {
+        if (stats.isEmpty()) {
+            return getString(R.string.report_no_data);
+        }
+        StringBuilder text = new StringBuilder(getString(R.string.report_since,
+                DateFormat.getDateFormat(this).format(stats.getFirstEventAt())));
+        for (Setting setting : Setting.values()) {
+            int drifts = stats.getDrifts(setting);
+            int fixes = 0;
+            for (int path = 1; path < DriftStats.PATHS; path++) {
+                fixes += stats.getFixes(setting, path);
+            }
+            if (drifts == 0 && fixes == 0) {
+                continue;
+            }
+            text.append("\n\n").append(getString(getLabel(setting)))
+                    .append('\n').append(getResources().getQuantityString(R.plurals.report_drifts, drifts, drifts))
+                    .append('\n').append(getString(R.string.report_times_of_day,
+                            stats.getDrifts(setting, 0), stats.getDrifts(setting, 1),
+                            stats.getDrifts(setting, 2), stats.getDrifts(setting, 3)))
+                    .append('\n').append(getString(R.string.report_fixes,
+                            stats.getFixed(setting, EventLog.PATH_AUTOMATIC),
+                            stats.getFixes(setting, EventLog.PATH_AUTOMATIC),
+                            stats.getFixed(setting, EventLog.PATH_GUIDED),
+                            stats.getFixes(setting, EventLog.PATH_GUIDED),
+                            stats.getFixed(setting, EventLog.PATH_WATCHDOG),
+                            stats.getFixes(setting, EventLog.PATH_WATCHDOG)))
+                    .append('\n').append(getString(R.string.report_fix_times,
+                            stats.getFixTimes(setting, 0), stats.getFixTimes(setting, 1),
+                            stats.getFixTimes(setting, 2), stats.getFixTimes(setting, 3),
+                            stats.getFixTimes(setting, 4)));
+        }
+        return text.toString();
+    }
+
+    private static int getLabel(Setting setting) {
+        switch (setting) {
+            case AIRPLANE_MODE:
+                return R.string.airplane_mode;
+            case MOBILE_NETWORK:
+                return R.string.mobile_network;
+            case WIFI:
+                return R.string.wifi;
+            case BLUETOOTH:
+                return R.string.bluetooth;
+            case SOUND_VOLUME:
+                return R.string.sound_volume;
+            case EARPIECE_VOLUME:
+                return R.string.earpiece_volume;
+            default:
+                throw new IllegalArgumentException("Unknown setting: " + setting);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.grannyaid;
+
+/**
+ * The device settings GrannyAid restores.
+ * Guided settings are processed in declaration order.
+ */
+public enum Setting {
+    AIRPLANE_MODE,
+    MOBILE_NETWORK,
+    WIFI,
+    BLUETOOTH,
+    SOUND_VOLUME,
+    EARPIECE_VOLUME
+}
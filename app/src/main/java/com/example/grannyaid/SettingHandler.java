@@ -0,0 +1,53 @@
+package com.example.grannyaid;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Knows how to check and restore one device setting.
+ * To manage a new setting, add it to the Setting enum, write a handler for it
+ * and register the handler in SettingHandlers.
+ */
+public interface SettingHandler {
+
+    Setting getSetting();
+
+    /**
+     * Check whether the device state differs from the profile for this setting
+     */
+    boolean probe(SettingsManager.Profile profile, DeviceStateSnapshot snapshot);
+
+    /**
+     * Whether apply() changes the setting by itself. Automatic handlers are applied together
+     * on a background thread; the others need the user, who changes them from the guided
+     * checklist, where a tap only opens the Settings screen (DeviceController.openSettingsScreen()).
+     */
+    boolean isAutomatic();
+
+    /**
+     * Restore the setting. Returns true only if the setting was changed directly;
+     * guided handlers open the Settings screen for it and return false.
+     */
+    boolean apply(SettingsManager.Profile profile);
+
+    /**
+     * Called after an automatic apply() returned true. Completes once the system confirms
+     * the new state, with false if it never does; must not block. Settings that are final
+     * as soon as apply() returns are confirmed right away.
+     */
+    default CompletableFuture<Boolean> confirm(SettingsManager.Profile profile) {
+        return CompletableFuture.completedFuture(true);
+    }
+
+    /**
+     * Check whether the device now matches the profile, used when the user comes back from a guided step
+     */
+    boolean verify(SettingsManager.Profile profile);
+
+    /**
+     * What the user has to change for this setting, shown on the guided checklist,
+     * as a string resource, or 0 if the setting is never guided
+     */
+    default int getGuidedInstruction(SettingsManager.Profile profile) {
+        return 0;
+    }
+}
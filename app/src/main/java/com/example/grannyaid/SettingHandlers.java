@@ -0,0 +1,26 @@
+package com.example.grannyaid;
+
+import android.content.Context;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Registry of all setting handlers. Guided settings are listed on the checklist in this order.
+ */
+public final class SettingHandlers {
+
+    private SettingHandlers() {
+    }
+
+    public static List<SettingHandler> create(Context context, DeviceController deviceController) {
+        return Collections.unmodifiableList(Arrays.asList(
+                new AirplaneModeHandler(deviceController),
+                new MobileNetworkHandler(deviceController),
+                new WifiHandler(deviceController),
+                new BluetoothHandler(context, deviceController),
+                new SoundVolumeHandler(deviceController),
+                new EarpieceVolumeHandler(deviceController)));
+    }
+}
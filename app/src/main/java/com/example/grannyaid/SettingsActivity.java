@@ -1,22 +1,54 @@
 package com.example.grannyaid;
 
+import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
-import android.provider.Settings;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.SeekBar;
+import android.widget.Spinner;
 import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class SettingsActivity extends AppCompatActivity {
+    private static final int REQUEST_IMPORT = 4001;
+    
+    // Profiles always offered in the selector, first and in this order, with their labels
+    private static final String[] PROFILE_NAMES = {
+            SettingsManager.PROFILE_HOME, SettingsManager.PROFILE_TRAVEL, SettingsManager.PROFILE_NIGHT
+    };
+    private static final int[] PROFILE_LABELS = {
+            R.string.profile_home, R.string.profile_travel, R.string.profile_night
+    };
+    
     private SettingsManager settingsManager;
     
+    // Names in the selector, in spinner order
+    private final List<String> profileNames = new ArrayList<>();
+    
+    // The profile shown, saving stores the screen under this name and activates it
+    private String selectedProfileName;
+    
+    private Spinner profileSpinner;
     private Switch airplaneModeSwitch;
     private Switch bluetoothSwitch;
     private Switch wifiSwitch;
     private Switch mobileNetworkSwitch;
+    private Switch autoFixSwitch;
     private SeekBar soundVolumeSeekBar;
     private TextView soundVolumeText;
     private SeekBar earpieceVolumeSeekBar;
@@ -31,35 +63,93 @@ public class SettingsActivity extends AppCompatActivity {
         settingsManager = new SettingsManager(this);
         
         // Initialize UI components
+        profileSpinner = findViewById(R.id.profileSpinner);
         airplaneModeSwitch = findViewById(R.id.airplaneModeSwitch);
         bluetoothSwitch = findViewById(R.id.bluetoothSwitch);
         wifiSwitch = findViewById(R.id.wifiSwitch);
         mobileNetworkSwitch = findViewById(R.id.mobileNetworkSwitch);
+        autoFixSwitch = findViewById(R.id.autoFixSwitch);
         soundVolumeSeekBar = findViewById(R.id.soundVolumeSeekBar);
         soundVolumeText = findViewById(R.id.soundVolumeText);
         earpieceVolumeSeekBar = findViewById(R.id.earpieceVolumeSeekBar);
         earpieceVolumeText = findViewById(R.id.earpieceVolumeText);
         saveSettingsButton = findViewById(R.id.saveSettingsButton);
         
-        // Load current settings
-        loadSavedSettings();
-        
         // Set up listeners
         setupListeners();
+        
+        // Load current settings in the background, saving waits until they are shown
+        saveSettingsButton.setEnabled(false);
+        profileSpinner.setEnabled(false);
+        DeviceIo.run(settingsManager::getActiveProfileName, null, activeName -> {
+            if (activeName == null || isFinishing() || isDestroyed()) {
+                return;
+            }
+            setupProfileSpinner(activeName);
+            saveSettingsButton.setEnabled(true);
+        });
+    }
+    
+    /**
+     * Offer the built-in profiles and every saved one, e.g. provisioned by an import or a managed
+     * configuration, with the active one selected. Profiles are in memory by now.
+     */
+    private void setupProfileSpinner(String activeName) {
+        profileNames.clear();
+        profileNames.addAll(Arrays.asList(PROFILE_NAMES));
+        for (String name : settingsManager.getProfileNames()) {
+            if (!profileNames.contains(name)) {
+                profileNames.add(name);
+            }
+        }
+        // Even if it was never saved, so that Save doesn't quietly switch to another profile
+        if (!profileNames.contains(activeName)) {
+            profileNames.add(activeName);
+        }
+        
+        List<String> labels = new ArrayList<>();
+        for (String name : profileNames) {
+            int builtIn = Arrays.asList(PROFILE_NAMES).indexOf(name);
+            labels.add(builtIn >= 0 ? getString(PROFILE_LABELS[builtIn]) : name);
+        }
+        int activeIndex = profileNames.indexOf(activeName);
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, labels);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        profileSpinner.setAdapter(adapter);
+        profileSpinner.setSelection(activeIndex, false);
+        selectProfile(activeName);
+        
+        profileSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                selectProfile(profileNames.get(position));
+            }
+            
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
+        profileSpinner.setEnabled(true);
+    }
+    
+    private void selectProfile(String name) {
+        selectedProfileName = name;
+        // A profile that was never saved starts as a copy of the active one
+        SettingsManager.Profile profile = settingsManager.getProfile(name);
+        showProfile(profile != null ? profile : settingsManager.getProfile());
     }
     
-    private void loadSavedSettings() {
-        // Load settings from preferences
-        airplaneModeSwitch.setChecked(settingsManager.getAirplaneMode());
-        bluetoothSwitch.setChecked(settingsManager.getBluetooth());
-        wifiSwitch.setChecked(settingsManager.getWifi());
-        mobileNetworkSwitch.setChecked(settingsManager.getMobileNetwork());
-        
-        int soundVolume = settingsManager.getSoundVolume();
+    private void showProfile(SettingsManager.Profile profile) {
+        airplaneModeSwitch.setChecked(profile.getAirplaneMode());
+        bluetoothSwitch.setChecked(profile.getBluetooth());
+        wifiSwitch.setChecked(profile.getWifi());
+        mobileNetworkSwitch.setChecked(profile.getMobileNetwork());
+        autoFixSwitch.setChecked(profile.getAutoFix());
+        
+        int soundVolume = profile.getSoundVolume();
         soundVolumeSeekBar.setProgress(soundVolume);
         soundVolumeText.setText(soundVolume + "%");
         
-        int earpieceVolume = settingsManager.getEarpieceVolume();
+        int earpieceVolume = profile.getEarpieceVolume();
         earpieceVolumeSeekBar.setProgress(earpieceVolume);
         earpieceVolumeText.setText(earpieceVolume + "%");
         
@@ -68,6 +158,7 @@ public class SettingsActivity extends AppCompatActivity {
         updateSwitchText(bluetoothSwitch, bluetoothSwitch.isChecked());
         updateSwitchText(wifiSwitch, wifiSwitch.isChecked());
         updateSwitchText(mobileNetworkSwitch, mobileNetworkSwitch.isChecked());
+        updateSwitchText(autoFixSwitch, autoFixSwitch.isChecked());
     }
     
     private void setupListeners() {
@@ -84,6 +175,9 @@ public class SettingsActivity extends AppCompatActivity {
         mobileNetworkSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> 
                 updateSwitchText(mobileNetworkSwitch, isChecked));
         
+        autoFixSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> 
+                updateSwitchText(autoFixSwitch, isChecked));
+        
         // SeekBar change listeners
         soundVolumeSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
@@ -113,6 +207,68 @@ public class SettingsActivity extends AppCompatActivity {
         
         // Save button click listener
         saveSettingsButton.setOnClickListener(v -> saveSettings());
+        
+        // Provisioning from a profile file
+        findViewById(R.id.importProfilesButton).setOnClickListener(v -> pickProfileFile());
+        
+        // What drifted and how it was fixed, for the caregiver
+        findViewById(R.id.openReportButton).setOnClickListener(v ->
+                startActivity(new Intent(this, ReportActivity.class)));
+        
+        // Hidden entry to the timing diagnostics, for caregivers and developers
+        findViewById(R.id.settingsTitle).setOnLongClickListener(v -> {
+            startActivity(new Intent(this, DiagnosticsActivity.class));
+            return true;
+        });
+    }
+    
+    private void pickProfileFile() {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                .addCategory(Intent.CATEGORY_OPENABLE)
+                // Many file managers don't know the JSON type, so accept any file and validate it
+                .setType("*/*")
+                .putExtra(Intent.EXTRA_MIME_TYPES, new String[]{"application/json", "text/plain", "application/octet-stream"});
+        startActivityForResult(intent, REQUEST_IMPORT);
+    }
+    
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQUEST_IMPORT && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            importProfiles(data.getData());
+        }
+    }
+    
+    private void importProfiles(Uri uri) {
+        DeviceIo.run(() -> ProfileImporter.apply(this, ProfileImporter.parseJson(readText(uri))), -1, changed -> {
+            if (changed < 0) {
+                Toast.makeText(this, R.string.profiles_import_failed, Toast.LENGTH_LONG).show();
+                return;
+            }
+            Toast.makeText(this, getString(R.string.profiles_imported, changed), Toast.LENGTH_LONG).show();
+            if (!isFinishing() && !isDestroyed()) {
+                // Show what was imported, the active profile may have changed too
+                setupProfileSpinner(settingsManager.getActiveProfileName());
+            }
+        });
+    }
+    
+    private String readText(Uri uri) throws IOException {
+        try (InputStream in = getContentResolver().openInputStream(uri)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + uri);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, count);
+                if (out.size() > ProfileImporter.MAX_FILE_BYTES) {
+                    throw new IOException("Profile file too large");
+                }
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
     }
     
     private void updateSwitchText(Switch switchView, boolean isChecked) {
@@ -120,15 +276,19 @@ public class SettingsActivity extends AppCompatActivity {
     }
     
     private void saveSettings() {
-        // Save settings to preferences
-        settingsManager.saveSettings(
-                airplaneModeSwitch.isChecked(),
-                bluetoothSwitch.isChecked(),
-                wifiSwitch.isChecked(),
-                mobileNetworkSwitch.isChecked(),
-                soundVolumeSeekBar.getProgress(),
-                earpieceVolumeSeekBar.getProgress()
-        );
+        // Save the selected profile and make it the one that gets restored
+        settingsManager.saveProfile(selectedProfileName, new SettingsManager.Profile.Builder()
+                .setAirplaneMode(airplaneModeSwitch.isChecked())
+                .setBluetooth(bluetoothSwitch.isChecked())
+                .setWifi(wifiSwitch.isChecked())
+                .setMobileNetwork(mobileNetworkSwitch.isChecked())
+                .setSoundVolume(soundVolumeSeekBar.getProgress())
+                .setEarpieceVolume(earpieceVolumeSeekBar.getProgress())
+                .setAutoFix(autoFixSwitch.isChecked())
+                .build());
+        
+        // Start or stop the background watchdog to match the new profile
+        DriftWatchdog.arm(this);
         
         // Show success message
         Toast.makeText(this, getString(R.string.settings_saved), Toast.LENGTH_SHORT).show();
@@ -1,56 +1,235 @@
 package com.example.grannyaid;
 
 import android.content.Context;
-import android.content.SharedPreferences;
+
+import java.util.List;
+import java.util.Map;
 
 public class SettingsManager {
-    private static final String PREFS_NAME = "GrannyAidPrefs";
-    private static final String KEY_AIRPLANE_MODE = "airplane_mode";
-    private static final String KEY_BLUETOOTH = "bluetooth";
-    private static final String KEY_WIFI = "wifi";
-    private static final String KEY_MOBILE_NETWORK = "mobile_network";
-    private static final String KEY_SOUND_VOLUME = "sound_volume";
-    private static final String KEY_EARPIECE_VOLUME = "earpiece_volume";
+    // Built-in profile names; the settings screen offers these
+    public static final String PROFILE_HOME = "home";
+    public static final String PROFILE_TRAVEL = "travel";
+    public static final String PROFILE_NIGHT = "night";
 
-    private final SharedPreferences preferences;
+    private final ProfileStore store;
 
     public SettingsManager(Context context) {
-        preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        store = ProfileStore.getInstance(context);
+    }
+
+    /**
+     * The active profile. Only the first call reads storage, call it off the main thread
+     * until the profiles have been loaded once.
+     */
+    public Profile getProfile() {
+        return store.getActiveProfile();
     }
 
-    public void saveSettings(boolean airplaneMode, boolean bluetooth, boolean wifi,
-                             boolean mobileNetwork, int soundVolume, int earpieceVolume) {
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.putBoolean(KEY_AIRPLANE_MODE, airplaneMode);
-        editor.putBoolean(KEY_BLUETOOTH, bluetooth);
-        editor.putBoolean(KEY_WIFI, wifi);
-        editor.putBoolean(KEY_MOBILE_NETWORK, mobileNetwork);
-        editor.putInt(KEY_SOUND_VOLUME, soundVolume);
-        editor.putInt(KEY_EARPIECE_VOLUME, earpieceVolume);
-        editor.apply();
+    /**
+     * The profile saved under the given name, or null if it was never saved
+     */
+    public Profile getProfile(String name) {
+        return store.getProfile(name);
     }
 
-    public boolean getAirplaneMode() {
-        return preferences.getBoolean(KEY_AIRPLANE_MODE, false);
+    public String getActiveProfileName() {
+        return store.getActiveName();
     }
 
-    public boolean getBluetooth() {
-        return preferences.getBoolean(KEY_BLUETOOTH, true);
+    /**
+     * Names of all saved profiles
+     */
+    public List<String> getProfileNames() {
+        return store.getNames();
     }
 
-    public boolean getWifi() {
-        return preferences.getBoolean(KEY_WIFI, true);
+    /**
+     * Make a saved profile the active one. Returns false if no profile has that name.
+     */
+    public boolean setActiveProfile(String name) {
+        return store.setActive(name);
     }
 
-    public boolean getMobileNetwork() {
-        return preferences.getBoolean(KEY_MOBILE_NETWORK, true);
+    /**
+     * Store a new version of the active profile. It gets the next version number.
+     */
+    public Profile saveProfile(Profile profile) {
+        return store.put(getActiveProfileName(), profile, true);
     }
 
-    public int getSoundVolume() {
-        return preferences.getInt(KEY_SOUND_VOLUME, 70);
+    /**
+     * Store the profile under the given name and make it the active one
+     */
+    public Profile saveProfile(String name, Profile profile) {
+        return store.put(name, profile, true);
     }
 
-    public int getEarpieceVolume() {
-        return preferences.getInt(KEY_EARPIECE_VOLUME, 70);
+    /**
+     * Store many profiles at once, with a single write. Profiles that already have the same values
+     * keep their version, so importing the same profiles again changes nothing.
+     *
+     * @param activeName Profile to make active, or null to keep the current one
+     * @return Number of profiles that were added or changed
+     */
+    public int importProfiles(Map<String, Profile> profiles, String activeName) {
+        return store.putAll(profiles, activeName);
+    }
+
+    /**
+     * The desired state of every setting the app manages. Instances never change;
+     * use a Builder to make a modified copy.
+     */
+    public static final class Profile {
+        private final boolean airplaneMode;
+        private final boolean bluetooth;
+        private final boolean wifi;
+        private final boolean mobileNetwork;
+        private final int soundVolume;
+        private final int earpieceVolume;
+        private final boolean autoFix;
+        private final long version;
+
+        private Profile(Builder builder, long version) {
+            this.airplaneMode = builder.airplaneMode;
+            this.bluetooth = builder.bluetooth;
+            this.wifi = builder.wifi;
+            this.mobileNetwork = builder.mobileNetwork;
+            this.soundVolume = builder.soundVolume;
+            this.earpieceVolume = builder.earpieceVolume;
+            this.autoFix = builder.autoFix;
+            this.version = version;
+        }
+
+        public boolean getAirplaneMode() {
+            return airplaneMode;
+        }
+
+        public boolean getBluetooth() {
+            return bluetooth;
+        }
+
+        public boolean getWifi() {
+            return wifi;
+        }
+
+        public boolean getMobileNetwork() {
+            return mobileNetwork;
+        }
+
+        public int getSoundVolume() {
+            return soundVolume;
+        }
+
+        public int getEarpieceVolume() {
+            return earpieceVolume;
+        }
+
+        /**
+         * Whether settings that can be changed without the user are restored in the background
+         */
+        public boolean getAutoFix() {
+            return autoFix;
+        }
+
+        /**
+         * Increases with every save, so callers can tell whether the profile changed
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Whether both profiles want the same state, whatever their versions
+         */
+        public boolean hasSameValues(Profile other) {
+            return airplaneMode == other.airplaneMode &&
+                    bluetooth == other.bluetooth &&
+                    wifi == other.wifi &&
+                    mobileNetwork == other.mobileNetwork &&
+                    soundVolume == other.soundVolume &&
+                    earpieceVolume == other.earpieceVolume &&
+                    autoFix == other.autoFix;
+        }
+
+        @Override
+        public String toString() {
+            return "Profile{version=" + version +
+                    ", airplaneMode=" + airplaneMode +
+                    ", bluetooth=" + bluetooth +
+                    ", wifi=" + wifi +
+                    ", mobileNetwork=" + mobileNetwork +
+                    ", soundVolume=" + soundVolume +
+                    ", earpieceVolume=" + earpieceVolume +
+                    ", autoFix=" + autoFix + "}";
+        }
+
+        public static final class Builder {
+            private boolean airplaneMode = false;
+            private boolean bluetooth = true;
+            private boolean wifi = true;
+            private boolean mobileNetwork = true;
+            private int soundVolume = 70;
+            private int earpieceVolume = 70;
+            private boolean autoFix = false;
+
+            public Builder() {
+            }
+
+            public Builder(Profile profile) {
+                airplaneMode = profile.airplaneMode;
+                bluetooth = profile.bluetooth;
+                wifi = profile.wifi;
+                mobileNetwork = profile.mobileNetwork;
+                soundVolume = profile.soundVolume;
+                earpieceVolume = profile.earpieceVolume;
+                autoFix = profile.autoFix;
+            }
+
+            public Builder setAirplaneMode(boolean airplaneMode) {
+                this.airplaneMode = airplaneMode;
+                return this;
+            }
+
+            public Builder setBluetooth(boolean bluetooth) {
+                this.bluetooth = bluetooth;
+                return this;
+            }
+
+            public Builder setWifi(boolean wifi) {
+                this.wifi = wifi;
+                return this;
+            }
+
+            public Builder setMobileNetwork(boolean mobileNetwork) {
+                this.mobileNetwork = mobileNetwork;
+                return this;
+            }
+
+            public Builder setSoundVolume(int soundVolume) {
+                this.soundVolume = soundVolume;
+                return this;
+            }
+
+            public Builder setEarpieceVolume(int earpieceVolume) {
+                this.earpieceVolume = earpieceVolume;
+                return this;
+            }
+
+            public Builder setAutoFix(boolean autoFix) {
+                this.autoFix = autoFix;
+                return this;
+            }
+
+            /**
+             * Build an unsaved profile; SettingsManager assigns the version when it is saved
+             */
+            public Profile build() {
+                return build(0);
+            }
+
+            Profile build(long version) {
+                return new Profile(this, version);
+            }
+        }
     }
-}
\ No newline at end of file
+}
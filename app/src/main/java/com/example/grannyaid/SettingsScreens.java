@@ -0,0 +1,253 @@
+package com.example.grannyaid;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.provider.Settings;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Which Settings screen each guided step opens on this phone.
+ * Every screen has a list of candidate intent actions, best first: the ones chosen by Android
+ * version, preceded by any OEM overrides for this manufacturer from the bundled
+ * settings_intents.json asset. resolve() asks the package manager once which candidate exists
+ * and remembers the winners, together with the build they were resolved on; they are worked out
+ * again only after a system or app update. The getters never block: until resolve() has finished they
+ * return the first candidate for the Android version, as the guided steps always did.
+ */
+final class SettingsScreens {
+    private static final String TAG = "SettingsScreens";
+
+    static final String AIRPLANE_MODE = "airplane_mode";
+    static final String MOBILE_NETWORK = "mobile_network";
+    static final String WIFI = "wifi";
+    static final String CONNECTIVITY_PANEL = "connectivity_panel";
+    private static final String[] SCREENS = {AIRPLANE_MODE, MOBILE_NETWORK, WIFI, CONNECTIVITY_PANEL};
+
+    private static final String PREFS_NAME = "GrannyAidSettingsScreens";
+    private static final String KEY_BUILD = "build";
+    // Suffix of the key that says the screen's action came from the overrides asset
+    private static final String KEY_OVERRIDE_SUFFIX = "_override";
+    // Stored for a screen that nothing on this phone can open
+    private static final String NONE = "";
+
+    private static final String OVERRIDES_ASSET = "settings_intents.json";
+
+    private static SettingsScreens instance;
+
+    private final Context context;
+
+    // Screen name to action, in SCREENS order; null until resolve() has finished
+    private volatile String[] resolved;
+    // Whether resolved[i] came from the overrides asset, written before resolved
+    private volatile boolean[] overridden;
+
+    static synchronized SettingsScreens getInstance(Context context) {
+        if (instance == null) {
+            instance = new SettingsScreens(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SettingsScreens(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Load the remembered actions, or resolve them again if they were found on another build.
+     * Reads preferences and queries the package manager, call it off the main thread.
+     */
+    synchronized void resolve() {
+        if (resolved != null) {
+            return;
+        }
+        SharedPreferences preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String build = buildKey();
+        String[] actions = new String[SCREENS.length];
+        boolean[] fromOverrides = new boolean[SCREENS.length];
+        if (build.equals(preferences.getString(KEY_BUILD, null))) {
+            for (int i = 0; i < SCREENS.length; i++) {
+                actions[i] = preferences.getString(SCREENS[i], NONE);
+                fromOverrides[i] = preferences.getBoolean(SCREENS[i] + KEY_OVERRIDE_SUFFIX, false);
+            }
+            overridden = fromOverrides;
+            resolved = actions;
+            return;
+        }
+
+        DeviceIo.noteDeviceCall("resolve settings screens");
+        JSONObject overrides = loadOverrides();
+        PackageManager packageManager = context.getPackageManager();
+        SharedPreferences.Editor editor = preferences.edit().clear().putString(KEY_BUILD, build);
+        for (int i = 0; i < SCREENS.length; i++) {
+            actions[i] = NONE;
+            List<String> fromAsset = new ArrayList<>();
+            addOverrides(fromAsset, SCREENS[i], overrides);
+            for (String action : candidates(SCREENS[i], overrides)) {
+                if (packageManager.resolveActivity(new Intent(action), PackageManager.MATCH_DEFAULT_ONLY) != null) {
+                    actions[i] = action;
+                    fromOverrides[i] = fromAsset.contains(action);
+                    break;
+                }
+            }
+            editor.putString(SCREENS[i], actions[i]);
+            editor.putBoolean(SCREENS[i] + KEY_OVERRIDE_SUFFIX, fromOverrides[i]);
+            Log.i(TAG, SCREENS[i] + " opens " + (actions[i].isEmpty() ? "nothing" : actions[i]) +
+                    (fromOverrides[i] ? " from " + OVERRIDES_ASSET : ""));
+        }
+        editor.apply();
+        overridden = fromOverrides;
+        resolved = actions;
+    }
+
+    /**
+     * Whether resolve() has finished, so getAction() answers for this phone
+     */
+    boolean isResolved() {
+        return resolved != null;
+    }
+
+    /**
+     * The intent action that opens the screen, or null if nothing on this phone opens it
+     */
+    String getAction(String screen) {
+        String[] actions = resolved;
+        if (actions == null) {
+            List<String> defaults = candidates(screen, null);
+            return defaults.isEmpty() ? null : defaults.get(0);
+        }
+        String action = actions[indexOf(screen)];
+        return action.isEmpty() ? null : action;
+    }
+
+    /**
+     * Whether the screen's action was picked from the overrides asset for this phone; false
+     * until resolve() has finished
+     */
+    boolean isOverridden(String screen) {
+        boolean[] fromOverrides = overridden;
+        return fromOverrides != null && fromOverrides[indexOf(screen)];
+    }
+
+    private static int indexOf(String screen) {
+        for (int i = 0; i < SCREENS.length; i++) {
+            if (SCREENS[i].equals(screen)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown settings screen: " + screen);
+    }
+
+    /**
+     * Everything that may open the screen on this phone, best first
+     */
+    private static List<String> candidates(String screen, JSONObject overrides) {
+        List<String> actions = new ArrayList<>();
+        addOverrides(actions, screen, overrides);
+        int sdk = Build.VERSION.SDK_INT;
+        switch (screen) {
+            case AIRPLANE_MODE:
+                // Android 14 moved airplane mode back to Network & internet
+                if (sdk >= Build.VERSION_CODES.Q && sdk < Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+                    actions.add(Settings.ACTION_NETWORK_OPERATOR_SETTINGS);
+                }
+                actions.add(Settings.ACTION_WIRELESS_SETTINGS);
+                actions.add(Settings.ACTION_AIRPLANE_MODE_SETTINGS);
+                actions.add(Settings.ACTION_SETTINGS);
+                break;
+            case MOBILE_NETWORK:
+                if (sdk >= Build.VERSION_CODES.P) {
+                    actions.add(Settings.ACTION_NETWORK_OPERATOR_SETTINGS);
+                }
+                actions.add(Settings.ACTION_WIRELESS_SETTINGS);
+                actions.add(Settings.ACTION_SETTINGS);
+                break;
+            case WIFI:
+                actions.add(Settings.ACTION_WIFI_SETTINGS);
+                actions.add(Settings.ACTION_WIRELESS_SETTINGS);
+                actions.add(Settings.ACTION_SETTINGS);
+                break;
+            case CONNECTIVITY_PANEL:
+                // No fallback, without the panel the steps are guided one by one
+                if (sdk >= Build.VERSION_CODES.Q) {
+                    actions.add(Settings.Panel.ACTION_INTERNET_CONNECTIVITY);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown settings screen: " + screen);
+        }
+        return actions;
+    }
+
+    /**
+     * Add the asset's actions for this screen that apply to this manufacturer and Android version.
+     * Entries look like {"manufacturer": "samsung", "screen": "mobile_network", "minSdk": 28,
+     * "maxSdk": 34, "actions": [...]}, the SDK bounds are optional.
+     */
+    private static void addOverrides(List<String> actions, String screen, JSONObject overrides) {
+        if (overrides == null) {
+            return;
+        }
+        JSONArray entries = overrides.optJSONArray("overrides");
+        if (entries == null) {
+            return;
+        }
+        for (int i = 0; i < entries.length(); i++) {
+            JSONObject entry = entries.optJSONObject(i);
+            if (entry == null ||
+                    !screen.equals(entry.optString("screen")) ||
+                    !Build.MANUFACTURER.equalsIgnoreCase(entry.optString("manufacturer")) ||
+                    Build.VERSION.SDK_INT < entry.optInt("minSdk", 0) ||
+                    Build.VERSION.SDK_INT > entry.optInt("maxSdk", Integer.MAX_VALUE)) {
+                continue;
+            }
+            JSONArray entryActions = entry.optJSONArray("actions");
+            for (int j = 0; entryActions != null && j < entryActions.length(); j++) {
+                String action = entryActions.optString(j);
+                if (!action.isEmpty() && !actions.contains(action)) {
+                    actions.add(action);
+                }
+            }
+        }
+    }
+
+    private JSONObject loadOverrides() {
+        try (InputStream in = context.getAssets().open(OVERRIDES_ASSET)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new JSONObject(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Ignoring unreadable " + OVERRIDES_ASSET + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Resolved actions stay valid as long as neither the system image nor the bundled overrides
+     * change; the fingerprint changes with every system update
+     */
+    private static String buildKey() {
+        return Build.VERSION.SDK_INT + "|" + Build.MANUFACTURER + "|" + Build.FINGERPRINT +
+                "|" + BuildConfig.VERSION_CODE;
+    }
+}
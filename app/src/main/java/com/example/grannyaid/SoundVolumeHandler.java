@@ -0,0 +1,37 @@
+package com.example.grannyaid;
+
+public class SoundVolumeHandler implements SettingHandler {
+    private final DeviceController deviceController;
+
+    public SoundVolumeHandler(DeviceController deviceController) {
+        this.deviceController = deviceController;
+    }
+
+    @Override
+    public Setting getSetting() {
+        return Setting.SOUND_VOLUME;
+    }
+
+    @Override
+    public boolean probe(SettingsManager.Profile profile, DeviceStateSnapshot snapshot) {
+        // If the volumes couldn't be read in time, apply anyway; it only writes streams that differ
+        return !deviceController.isVolumeSet(Setting.SOUND_VOLUME, profile.getSoundVolume(),
+                snapshot.getVolumeIndices());
+    }
+
+    @Override
+    public boolean isAutomatic() {
+        return true;
+    }
+
+    @Override
+    public boolean apply(SettingsManager.Profile profile) {
+        return deviceController.setSoundVolume(profile.getSoundVolume());
+    }
+
+    @Override
+    public boolean verify(SettingsManager.Profile profile) {
+        return deviceController.isVolumeSet(Setting.SOUND_VOLUME, profile.getSoundVolume(),
+                deviceController.readVolumeIndices());
+    }
+}
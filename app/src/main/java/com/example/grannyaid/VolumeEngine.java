@@ -0,0 +1,168 @@
+package com.example.grannyaid;
+
+import android.media.AudioManager;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Reads and restores all managed audio streams from one table.
+ * Current levels are read in a single pass and only streams that differ from
+ * the target are written, so a fix where nothing drifted costs no volume writes.
+ * Percent and stream index are converted with rounding in both directions,
+ * so a saved percentage always maps to the same index and back.
+ */
+public final class VolumeEngine {
+    private static final String TAG = "VolumeEngine";
+
+    /**
+     * One managed stream and the profile setting whose percentage it follows
+     */
+    private static final class StreamSpec {
+        final int stream;
+        final String name;
+        final Setting setting;
+        // Lowering these to zero switches the ringer to vibrate or silent, which needs
+        // Do Not Disturb access: a zero target leaves them alone, a small one stops a step above zero
+        final boolean keepAudible;
+
+        StreamSpec(int stream, String name, Setting setting, boolean keepAudible) {
+            this.stream = stream;
+            this.name = name;
+            this.setting = setting;
+            this.keepAudible = keepAudible;
+        }
+    }
+
+    private static final StreamSpec[] STREAMS = {
+            new StreamSpec(AudioManager.STREAM_MUSIC, "music", Setting.SOUND_VOLUME, false),
+            new StreamSpec(AudioManager.STREAM_RING, "ring", Setting.SOUND_VOLUME, true),
+            new StreamSpec(AudioManager.STREAM_NOTIFICATION, "notification", Setting.SOUND_VOLUME, true),
+            new StreamSpec(AudioManager.STREAM_ALARM, "alarm", Setting.SOUND_VOLUME, false),
+            new StreamSpec(AudioManager.STREAM_VOICE_CALL, "voice call", Setting.EARPIECE_VOLUME, false),
+    };
+
+    private static final int SKIP = -1;
+
+    private final AudioManager audioManager;
+
+    // Stream ranges never change at runtime, so they are read only once
+    private final int[] minIndex = new int[STREAMS.length];
+    private final int[] maxIndex = new int[STREAMS.length];
+    private boolean rangesLoaded = false;
+
+    public VolumeEngine(AudioManager audioManager) {
+        this.audioManager = audioManager;
+    }
+
+    private synchronized void loadRanges() {
+        if (rangesLoaded) {
+            return;
+        }
+        for (int i = 0; i < STREAMS.length; i++) {
+            int stream = STREAMS[i].stream;
+            maxIndex[i] = audioManager.getStreamMaxVolume(stream);
+            // Some streams (e.g. voice call) can't go down to zero
+            minIndex[i] = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ?
+                    audioManager.getStreamMinVolume(stream) : 0;
+        }
+        rangesLoaded = true;
+    }
+
+    /**
+     * Current index of every managed stream, in table order
+     */
+    public int[] readIndices() {
+        loadRanges();
+        int[] indices = new int[STREAMS.length];
+        for (int i = 0; i < STREAMS.length; i++) {
+            indices[i] = audioManager.getStreamVolume(STREAMS[i].stream);
+        }
+        return indices;
+    }
+
+    /**
+     * Check whether every stream that follows the given setting is at the target percentage
+     */
+    public boolean matches(Setting setting, int percent, int[] indices) {
+        loadRanges();
+        for (int i = 0; i < STREAMS.length; i++) {
+            StreamSpec spec = STREAMS[i];
+            if (spec.setting == setting) {
+                int target = targetIndex(i, percent);
+                if (target != SKIP && indices[i] != target) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bring every stream that follows the given setting to the target percentage,
+     * writing only the streams that differ
+     *
+     * @return Number of streams written, or -1 if a write failed
+     */
+    public int apply(Setting setting, int percent) {
+        int[] indices = readIndices();
+        int written = 0;
+        boolean failed = false;
+        for (int i = 0; i < STREAMS.length; i++) {
+            StreamSpec spec = STREAMS[i];
+            if (spec.setting != setting) {
+                continue;
+            }
+            int target = targetIndex(i, percent);
+            if (target == SKIP || indices[i] == target) {
+                continue;
+            }
+            try {
+                audioManager.setStreamVolume(spec.stream, target, 0);
+                written++;
+                Log.d(TAG, "Set " + spec.name + " volume from " + percentFor(i, indices[i]) +
+                        "% to " + percent + "% (index " + indices[i] + " -> " + target + ")");
+            } catch (Exception e) {
+                // e.g. the ring stream while Do Not Disturb is on
+                Log.e(TAG, "Failed to set " + spec.name + " volume: " + e.getMessage());
+                failed = true;
+            }
+        }
+        return failed ? -1 : written;
+    }
+
+    /**
+     * Index the stream is brought to for a percentage, or SKIP if it is left alone.
+     * Streams that must stay audible never go to their lowest index, even when a small
+     * percentage rounds down to it.
+     */
+    private int targetIndex(int row, int percent) {
+        int index = indexFor(row, percent);
+        if (!STREAMS[row].keepAudible || index > minIndex[row]) {
+            return index;
+        }
+        if (percent <= 0 || maxIndex[row] <= minIndex[row]) {
+            return SKIP;
+        }
+        return minIndex[row] + 1;
+    }
+
+    /**
+     * Stream index for a percentage, rounded to the nearest step
+     */
+    private int indexFor(int row, int percent) {
+        int clamped = Math.max(0, Math.min(100, percent));
+        int range = maxIndex[row] - minIndex[row];
+        return minIndex[row] + Math.round(clamped * range / 100f);
+    }
+
+    /**
+     * Percentage for a stream index, the exact inverse of indexFor() for every reachable index
+     */
+    private int percentFor(int row, int index) {
+        int range = maxIndex[row] - minIndex[row];
+        if (range <= 0) {
+            return 100;
+        }
+        return Math.round((index - minIndex[row]) * 100f / range);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.grannyaid;
+
+import java.util.concurrent.CompletableFuture;
+
+public class WifiHandler implements SettingHandler {
+    private final DeviceController deviceController;
+
+    public WifiHandler(DeviceController deviceController) {
+        this.deviceController = deviceController;
+    }
+
+    @Override
+    public Setting getSetting() {
+        return Setting.WIFI;
+    }
+
+    @Override
+    public boolean probe(SettingsManager.Profile profile, DeviceStateSnapshot snapshot) {
+        return profile.getWifi() != snapshot.isWifiEnabled();
+    }
+
+    @Override
+    public boolean isAutomatic() {
+        // On Android 10 (Q) and above, apps cannot enable/disable WiFi directly, unless they are Device Owner
+        return deviceController.canSetWifiDirectly();
+    }
+
+    @Override
+    public boolean apply(SettingsManager.Profile profile) {
+        return deviceController.setWifi(profile.getWifi());
+    }
+
+    @Override
+    public CompletableFuture<Boolean> confirm(SettingsManager.Profile profile) {
+        // setWifiEnabled() only means the request was accepted, wait for the state broadcast
+        return deviceController.confirmState(Setting.WIFI, profile.getWifi());
+    }
+
+    @Override
+    public boolean verify(SettingsManager.Profile profile) {
+        return deviceController.isWifiEnabled() == profile.getWifi();
+    }
+
+    @Override
+    public int getGuidedInstruction(SettingsManager.Profile profile) {
+        return profile.getWifi() ? R.string.guided_step_wifi_enable : R.string.guided_step_wifi_disable;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.grannyaid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.TimeZone;
+
+/**
+ * Bucketing and persistence of the caregiver report counters
+ */
+public class DriftStatsTest {
+
+    private static final long HOUR_MS = 60 * 60 * 1000;
+    // 2024-01-01 00:00 UTC
+    private static final long MIDNIGHT_UTC = 1_704_067_200_000L;
+
+    private TimeZone previousTimeZone;
+
+    @Before
+    public void setUp() {
+        previousTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(previousTimeZone);
+    }
+
+    @Test
+    public void fixTimesFallIntoTheirBuckets() {
+        DriftStats stats = new DriftStats();
+        long[] durations = {0, 4_999, 5_000, 29_999, 30_000, 2 * 60_000 - 1, 2 * 60_000, 10 * 60_000 - 1,
+                10 * 60_000, 24 * HOUR_MS};
+        int[] expectedBuckets = {0, 0, 1, 1, 2, 2, 3, 3, 4, 4};
+        for (long duration : durations) {
+            fix(stats, Setting.WIFI, EventLog.PATH_AUTOMATIC, true, duration);
+        }
+
+        int[] counted = new int[DriftStats.TIME_BUCKETS];
+        for (int bucket : expectedBuckets) {
+            counted[bucket]++;
+        }
+        for (int bucket = 0; bucket < DriftStats.TIME_BUCKETS; bucket++) {
+            assertEquals("bucket " + bucket, counted[bucket], stats.getFixTimes(Setting.WIFI, bucket));
+        }
+    }
+
+    @Test
+    public void onlySuccessfulFixesWithADurationAreTimed() {
+        DriftStats stats = new DriftStats();
+        fix(stats, Setting.BLUETOOTH, EventLog.PATH_GUIDED, false, 1_000);
+        fix(stats, Setting.BLUETOOTH, EventLog.PATH_GUIDED, true, -1);
+        fix(stats, Setting.BLUETOOTH, EventLog.PATH_GUIDED, true, 1_000);
+
+        assertEquals(3, stats.getFixes(Setting.BLUETOOTH, EventLog.PATH_GUIDED));
+        assertEquals(2, stats.getFixed(Setting.BLUETOOTH, EventLog.PATH_GUIDED));
+        int timed = 0;
+        for (int bucket = 0; bucket < DriftStats.TIME_BUCKETS; bucket++) {
+            timed += stats.getFixTimes(Setting.BLUETOOTH, bucket);
+        }
+        assertEquals(1, timed);
+        assertEquals(0, stats.getFixes(Setting.BLUETOOTH, EventLog.PATH_AUTOMATIC));
+    }
+
+    @Test
+    public void driftsAreSplitByTimeOfDay() {
+        DriftStats stats = new DriftStats();
+        long[] hours = {0, 5, 6, 11, 12, 17, 18, 23};
+        for (long hour : hours) {
+            stats.add(MIDNIGHT_UTC + hour * HOUR_MS + 59 * 60_000, EventLog.TYPE_DRIFT, Setting.AIRPLANE_MODE,
+                    EventLog.PATH_NONE, EventLog.OUTCOME_NONE, 0);
+        }
+
+        assertEquals(hours.length, stats.getDrifts(Setting.AIRPLANE_MODE));
+        for (int timeOfDay = 0; timeOfDay < DriftStats.TIMES_OF_DAY; timeOfDay++) {
+            assertEquals("time of day " + timeOfDay, 2, stats.getDrifts(Setting.AIRPLANE_MODE, timeOfDay));
+        }
+        assertEquals(0, stats.getDrifts(Setting.WIFI));
+        assertEquals(MIDNIGHT_UTC + 59 * 60_000, stats.getFirstEventAt());
+    }
+
+    @Test
+    public void writtenStatsReadBackTheSame() throws IOException {
+        DriftStats stats = new DriftStats();
+        stats.add(MIDNIGHT_UTC + 8 * HOUR_MS, EventLog.TYPE_DRIFT, Setting.SOUND_VOLUME,
+                EventLog.PATH_NONE, EventLog.OUTCOME_NONE, 0);
+        fix(stats, Setting.SOUND_VOLUME, EventLog.PATH_WATCHDOG, true, 45_000);
+        fix(stats, Setting.EARPIECE_VOLUME, EventLog.PATH_AUTOMATIC, false, 0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        stats.write(new DataOutputStream(bytes));
+        DriftStats read = DriftStats.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(stats.getFirstEventAt(), read.getFirstEventAt());
+        assertEquals(1, read.getDrifts(Setting.SOUND_VOLUME, 1));
+        assertEquals(1, read.getFixed(Setting.SOUND_VOLUME, EventLog.PATH_WATCHDOG));
+        assertEquals(1, read.getFixTimes(Setting.SOUND_VOLUME, 2));
+        assertEquals(1, read.getFixes(Setting.EARPIECE_VOLUME, EventLog.PATH_AUTOMATIC));
+        assertEquals(0, read.getFixed(Setting.EARPIECE_VOLUME, EventLog.PATH_AUTOMATIC));
+    }
+
+    @Test
+    public void damagedStatsAreRejected() {
+        byte[] garbage = new byte[64];
+        try {
+            DriftStats.read(new DataInputStream(new ByteArrayInputStream(garbage)));
+            fail("Read stats from garbage");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("Not a stats file"));
+        }
+    }
+
+    private static void fix(DriftStats stats, Setting setting, int path, boolean fixed, long durationMs) {
+        stats.add(MIDNIGHT_UTC, EventLog.TYPE_FIX, setting, path,
+                fixed ? EventLog.OUTCOME_FIXED : EventLog.OUTCOME_NOT_FIXED, durationMs);
+    }
+}
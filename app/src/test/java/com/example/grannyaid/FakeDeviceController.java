@@ -0,0 +1,332 @@
+package com.example.grannyaid;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulated device for running the fix flow on a build machine. Keeps every setting in memory
+ * and behaves like a phone, not like the app: injected latency on every probe and change,
+ * changes the platform refuses, and accepted changes that only land after a delay, or never.
+ * It makes no decisions of its own; the direct paths stay open until the app closes them.
+ *
+ * How each setting reacts is decided up front with setBehavior(); only the latencies are random.
+ */
+final class FakeDeviceController implements DeviceController {
+
+    enum Behavior {
+        /** The change is accepted and lands after the configured delay */
+        DELAY,
+        /** The platform refuses the change */
+        REFUSE,
+        /** The change is accepted but never lands */
+        LOSE
+    }
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "FakeDevice");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this
+    private final Map<Setting, Boolean> switches = new EnumMap<>(Setting.class);
+    private final Map<Setting, Integer> volumes = new EnumMap<>(Setting.class);
+    private final Map<Setting, Behavior> behaviors = new EnumMap<>(Setting.class);
+    private final Map<Setting, Long> delaysMs = new EnumMap<>(Setting.class);
+    private boolean mobileDataDirect;
+    private boolean wifiDirect;
+
+    private volatile long minLatencyMs = 0;
+    private volatile long maxLatencyMs = 0;
+    private volatile long confirmTimeoutMs = 200;
+    private volatile boolean skipMobileDataCheck = false;
+
+    /**
+     * Put the device into a new state, forgetting everything a previous scenario did
+     */
+    synchronized void reset(boolean airplaneMode, boolean mobileData, boolean wifi, boolean bluetooth,
+                            int soundVolume, int earpieceVolume) {
+        switches.put(Setting.AIRPLANE_MODE, airplaneMode);
+        switches.put(Setting.MOBILE_NETWORK, mobileData);
+        switches.put(Setting.WIFI, wifi);
+        switches.put(Setting.BLUETOOTH, bluetooth);
+        volumes.put(Setting.SOUND_VOLUME, soundVolume);
+        volumes.put(Setting.EARPIECE_VOLUME, earpieceVolume);
+        behaviors.clear();
+        delaysMs.clear();
+        skipMobileDataCheck = false;
+    }
+
+    /**
+     * Which settings can be changed without the user, e.g. with WRITE_SECURE_SETTINGS or as Device Owner
+     */
+    synchronized void setDirectAccess(boolean mobileData, boolean wifi) {
+        mobileDataDirect = mobileData;
+        wifiDirect = wifi;
+    }
+
+    synchronized void setBehavior(Setting setting, Behavior behavior, long delayMs) {
+        behaviors.put(setting, behavior);
+        delaysMs.put(setting, delayMs);
+    }
+
+    /**
+     * Every probe and change takes a random time in this range
+     */
+    void setLatency(long minMs, long maxMs) {
+        if (minMs < 0 || maxMs < minMs) {
+            throw new IllegalArgumentException("Invalid latency range: " + minMs + ".." + maxMs);
+        }
+        minLatencyMs = minMs;
+        maxLatencyMs = maxMs;
+    }
+
+    /**
+     * How long confirmState() waits, the real device waits several seconds
+     */
+    void setConfirmTimeout(long timeoutMs) {
+        confirmTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * The user changed a setting by hand, in the Settings app
+     */
+    synchronized void setByUser(Setting setting, boolean value) {
+        switches.put(setting, value);
+    }
+
+    private void simulateLatency() {
+        long min = minLatencyMs;
+        long max = maxLatencyMs;
+        if (max == 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(min, max + 1));
+        } catch (InterruptedException e) {
+            // Cancelled by a probe timeout, as a binder call would be
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A switch as it is right now, without latency, for checking what the fix did
+     */
+    synchronized boolean peekSwitch(Setting setting) {
+        return switches.get(setting);
+    }
+
+    /**
+     * A volume percentage as it is right now, without latency
+     */
+    synchronized int peekVolume(Setting setting) {
+        return volumes.get(setting);
+    }
+
+    private synchronized boolean read(Setting setting) {
+        return switches.get(setting);
+    }
+
+    /**
+     * Apply a change to a switch according to its behavior, returns whether it was accepted
+     */
+    private boolean change(Setting setting, boolean value) {
+        simulateLatency();
+        Behavior behavior;
+        long delayMs;
+        synchronized (this) {
+            behavior = behaviors.getOrDefault(setting, Behavior.DELAY);
+            delayMs = delaysMs.getOrDefault(setting, 0L);
+        }
+        switch (behavior) {
+            case REFUSE:
+                return false;
+            case LOSE:
+                return true;
+            default:
+                if (delayMs == 0) {
+                    setByUser(setting, value);
+                } else {
+                    scheduler.schedule(() -> setByUser(setting, value), delayMs, TimeUnit.MILLISECONDS);
+                }
+                return true;
+        }
+    }
+
+    @Override
+    public boolean hasRequiredPermissions() {
+        return true;
+    }
+
+    @Override
+    public DeviceStateSnapshot cachedSnapshot() {
+        // Like a cold cache, every fix probes
+        return null;
+    }
+
+    @Override
+    public boolean isAirplaneModeEnabled() {
+        simulateLatency();
+        return read(Setting.AIRPLANE_MODE);
+    }
+
+    @Override
+    public boolean isWifiEnabled() {
+        simulateLatency();
+        return read(Setting.WIFI);
+    }
+
+    @Override
+    public boolean isBluetoothEnabled() {
+        simulateLatency();
+        return read(Setting.BLUETOOTH);
+    }
+
+    @Override
+    public boolean isMobileDataEnabled() {
+        if (skipMobileDataCheck) {
+            return true;
+        }
+        return probeMobileDataEnabled();
+    }
+
+    @Override
+    public boolean probeMobileDataEnabled() {
+        simulateLatency();
+        return read(Setting.MOBILE_NETWORK);
+    }
+
+    @Override
+    public void setSkipMobileDataCheck(boolean skip) {
+        skipMobileDataCheck = skip;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> confirmState(Setting setting, boolean target) {
+        CompletableFuture<Boolean> confirmed = new CompletableFuture<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (read(setting) == target) {
+                    confirmed.complete(true);
+                } else if (System.nanoTime() > deadline) {
+                    confirmed.complete(false);
+                } else {
+                    scheduler.schedule(this, 2, TimeUnit.MILLISECONDS);
+                }
+            }
+        });
+        return confirmed;
+    }
+
+    @Override
+    public boolean setAirplaneMode(boolean enable) {
+        // The Settings screen would open, nothing changes until the user acts
+        return false;
+    }
+
+    @Override
+    public boolean setBluetooth(boolean enable) {
+        return change(Setting.BLUETOOTH, enable);
+    }
+
+    @Override
+    public synchronized boolean canSetWifiDirectly() {
+        return wifiDirect;
+    }
+
+    @Override
+    public boolean setWifi(boolean enable) {
+        if (!canSetWifiDirectly()) {
+            return false;
+        }
+        return change(Setting.WIFI, enable);
+    }
+
+    @Override
+    public synchronized boolean canSetMobileNetworkDirectly() {
+        return mobileDataDirect;
+    }
+
+    @Override
+    public boolean setMobileNetworkDirectly(boolean enable) {
+        return change(Setting.MOBILE_NETWORK, enable);
+    }
+
+    @Override
+    public synchronized void disableMobileNetworkDirectly() {
+        mobileDataDirect = false;
+    }
+
+    @Override
+    public boolean setMobileNetwork(boolean enable) {
+        // The Settings screen would open, nothing changes until the user acts
+        return false;
+    }
+
+    @Override
+    public void openSettingsScreen(Setting setting) {
+        // The Settings screen would open, nothing changes until the user acts
+    }
+
+    @Override
+    public boolean isConnectivityPanelAvailable() {
+        return false;
+    }
+
+    @Override
+    public int[] readVolumeIndices() {
+        simulateLatency();
+        synchronized (this) {
+            return new int[]{volumes.get(Setting.SOUND_VOLUME), volumes.get(Setting.EARPIECE_VOLUME)};
+        }
+    }
+
+    @Override
+    public boolean isVolumeSet(Setting setting, int volumePercent, int[] indices) {
+        if (indices == null) {
+            return false;
+        }
+        return indices[setting == Setting.SOUND_VOLUME ? 0 : 1] == volumePercent;
+    }
+
+    @Override
+    public boolean setSoundVolume(int volumePercent) {
+        return setVolume(Setting.SOUND_VOLUME, volumePercent);
+    }
+
+    @Override
+    public boolean isSoundVolumeSet(int volumePercent) {
+        return isVolumeSet(Setting.SOUND_VOLUME, volumePercent, readVolumeIndices());
+    }
+
+    @Override
+    public boolean setEarpieceVolume(int volumePercent) {
+        return setVolume(Setting.EARPIECE_VOLUME, volumePercent);
+    }
+
+    @Override
+    public boolean isEarpieceVolumeSet(int volumePercent) {
+        return isVolumeSet(Setting.EARPIECE_VOLUME, volumePercent, readVolumeIndices());
+    }
+
+    /**
+     * Volumes are written synchronously, as by AudioManager: refused, or set at once
+     */
+    private boolean setVolume(Setting setting, int volumePercent) {
+        simulateLatency();
+        synchronized (this) {
+            if (behaviors.getOrDefault(setting, Behavior.DELAY) == Behavior.REFUSE) {
+                return false;
+            }
+            volumes.put(setting, volumePercent);
+            return true;
+        }
+    }
+}
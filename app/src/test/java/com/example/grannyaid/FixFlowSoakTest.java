@@ -0,0 +1,469 @@
+package com.example.grannyaid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.Manifest;
+import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+import android.widget.Button;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowToast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Drives MainActivity's fix flow through random drift scenarios on a simulated device:
+ * random profiles, random drift, direct access or not, changes that are refused, lost or
+ * land late, and a user who fixes what the checklist asks for or doesn't.
+ *
+ * What is right is judged only from the device and the user, never from the pipeline's rules:
+ * a change the device would carry out is made without asking the user, the checklist only lists
+ * settings that are wrong and that the app has no way to change, nothing else is touched, and
+ * the result message tells the truth about the device after the fix. Any violation is a wrong outcome.
+ * At the end the latency from the tap to the first decision (the result message, or the
+ * checklist) and from coming back to the result are reported as percentiles.
+ *
+ * A normal test run only draws a few scenarios; the grannyaid.soak.scenarios and
+ * grannyaid.soak.seed system properties ask for a real soak, see app/build.gradle. Without a seed
+ * every run draws the same scenarios.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, application = FixFlowSoakTest.SoakApplication.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class FixFlowSoakTest {
+
+    /**
+     * Runs the fix screens against the fake device
+     */
+    public static class SoakApplication extends GrannyAidApplication {
+        final FakeDeviceController device = new FakeDeviceController();
+
+        @Override
+        public DeviceController createDeviceController(Context context) {
+            return device;
+        }
+    }
+
+    private static final long STEP_TIMEOUT_MS = 10_000;
+
+    // Kept well below the probe timeout and the confirm timeout, so that they never decide a scenario
+    private static final long MAX_LATENCY_MS = 5;
+    private static final long CONFIRM_TIMEOUT_MS = 200;
+    private static final long MAX_CHANGE_DELAY_MS = 60;
+
+    private static final double DRIFT_RATE = 0.4;
+    private static final double REFUSE_RATE = 0.1;
+    private static final double LOSE_RATE = 0.1;
+    private static final double USER_FIXES_RATE = 0.85;
+
+    private static final int[] VOLUMES = {0, 30, 70, 100};
+
+    // Settings that have a Settings screen the user can be sent to
+    private static final List<Setting> GUIDABLE =
+            Arrays.asList(Setting.AIRPLANE_MODE, Setting.MOBILE_NETWORK, Setting.WIFI);
+
+    // Enough to run every stage of the flow; ask for more with -PsoakScenarios
+    private static final int DEFAULT_SCENARIOS = 50;
+    // Every run draws the same scenarios unless -PsoakSeed asks for others, "random" for a new draw
+    private static final long DEFAULT_SEED = 20261018L;
+
+    private SoakApplication application;
+    private FakeDeviceController device;
+    private ActivityController<MainActivity> controller;
+    private MainActivity activity;
+
+    @Before
+    public void setUp() {
+        application = (SoakApplication) RuntimeEnvironment.getApplication();
+        device = application.device;
+        device.setLatency(0, MAX_LATENCY_MS);
+        device.setConfirmTimeout(CONFIRM_TIMEOUT_MS);
+        shadowOf((Application) application).grantPermissions(Manifest.permission.BLUETOOTH_CONNECT);
+
+        controller = Robolectric.buildActivity(MainActivity.class).setup();
+        activity = controller.get();
+    }
+
+    @After
+    public void tearDown() {
+        controller.pause().stop().destroy();
+    }
+
+    @Test
+    public void randomDriftScenarios() {
+        int count = Integer.getInteger("grannyaid.soak.scenarios", DEFAULT_SCENARIOS);
+        String seedProperty = System.getProperty("grannyaid.soak.seed");
+        long seed = seedProperty == null ? DEFAULT_SEED :
+                "random".equals(seedProperty) ? System.currentTimeMillis() : Long.parseLong(seedProperty);
+        Random random = new Random(seed);
+
+        Latencies decisions = new Latencies();
+        Latencies returns = new Latencies();
+        List<String> wrong = new ArrayList<>();
+        int[] outcomes = new int[Outcome.values().length];
+
+        for (int i = 0; i < count; i++) {
+            Scenario scenario = Scenario.random(random);
+            List<String> problems = new ArrayList<>();
+            Outcome shown = run(scenario, decisions, returns, problems);
+            if (shown != null) {
+                outcomes[shown.ordinal()]++;
+            }
+            for (String problem : problems) {
+                wrong.add("#" + i + " " + problem + " in " + scenario);
+            }
+        }
+
+        System.out.println("Fix flow soak: " + count + " scenarios, seed " + seed);
+        for (Outcome outcome : Outcome.values()) {
+            System.out.println("  shown " + outcome + ": " + outcomes[outcome.ordinal()]);
+        }
+        System.out.println("  tap to decision:    " + decisions);
+        System.out.println("  return to result:   " + returns);
+        System.out.println("  wrong outcomes:     " + wrong.size());
+        for (String problem : wrong.subList(0, Math.min(20, wrong.size()))) {
+            System.out.println("    " + problem);
+        }
+        assertEquals("Wrong outcomes, seed " + seed, 0, wrong.size());
+    }
+
+    /**
+     * Run one scenario, adding what went wrong to problems. Returns the result shown, or null
+     * if the message was none of the known ones.
+     */
+    private Outcome run(Scenario scenario, Latencies decisions, Latencies returns, List<String> problems) {
+        SettingsManager.Profile profile = scenario.profile();
+        new SettingsManager(application).saveProfile(profile);
+        scenario.prepare(device);
+
+        Button fixButton = activity.findViewById(R.id.fixButton);
+        runUntil("fix button", fixButton::isEnabled, STEP_TIMEOUT_MS);
+        ShadowToast.reset();
+        drainStartedActivities();
+
+        long tap = System.nanoTime();
+        fixButton.performClick();
+        Intent[] checklist = new Intent[1];
+        runUntil("decision", () -> ShadowToast.shownToastCount() > 0 ||
+                (checklist[0] = nextChecklist()) != null, STEP_TIMEOUT_MS);
+        decisions.add(System.nanoTime() - tap);
+
+        List<Setting> guided = new ArrayList<>();
+        if (checklist[0] != null) {
+            for (String name : checklist[0].getStringArrayExtra(GuidedChecklistActivity.EXTRA_SETTINGS)) {
+                guided.add(Setting.valueOf(name));
+            }
+        }
+        for (Setting setting : Setting.values()) {
+            if (!scenario.drifted(setting)) {
+                continue;
+            }
+            boolean rightNow = matches(setting, profile);
+            if (scenario.landsDirectly(setting) && (!rightNow || guided.contains(setting))) {
+                problems.add(setting + " would have been changed by the device, but " +
+                        (rightNow ? "the user was asked to" : "it wasn't fixed"));
+            }
+            if (GUIDABLE.contains(setting) && !scenario.deviceAllowsDirect(setting) &&
+                    !rightNow && !guided.contains(setting)) {
+                problems.add(setting + " can only be changed by the user, who wasn't asked to");
+            }
+        }
+        for (Setting setting : guided) {
+            if (!GUIDABLE.contains(setting) || matches(setting, profile)) {
+                problems.add("checklist lists " + setting + ", which " +
+                        (GUIDABLE.contains(setting) ? "is already right" : "has no Settings screen"));
+            }
+        }
+
+        if (checklist[0] != null) {
+            // The user leaves for the checklist, changes what they manage to and comes back
+            controller.pause();
+            scenario.actAsUser(device, guided);
+            long back = System.nanoTime();
+            controller.resume();
+            runUntil("result", () -> ShadowToast.shownToastCount() > 0, STEP_TIMEOUT_MS);
+            returns.add(System.nanoTime() - back);
+        }
+        // Let the flow settle before the device is checked and the next scenario changes the profile
+        runUntil("idle", fixButton::isEnabled, STEP_TIMEOUT_MS);
+
+        boolean anyDrift = false;
+        boolean allFixed = true;
+        boolean anyRight = false;
+        for (Setting setting : Setting.values()) {
+            boolean right = matches(setting, profile);
+            anyRight |= right;
+            if (scenario.drifted(setting)) {
+                anyDrift = true;
+                allFixed &= right;
+            } else if (!right) {
+                problems.add(setting + " was right before the fix and isn't after it");
+            }
+        }
+        Outcome expected = !anyDrift ? Outcome.ALREADY_CORRECT :
+                allFixed ? Outcome.FIXED : anyRight ? Outcome.PARTIALLY_FIXED : Outcome.NOT_FIXED;
+
+        String text = ShadowToast.getTextOfLatestToast();
+        Outcome shown = null;
+        for (Outcome outcome : Outcome.values()) {
+            if (application.getString(outcome.message).equals(text)) {
+                shown = outcome;
+            }
+        }
+        if (shown != expected) {
+            problems.add("shown \"" + text + "\", expected " + expected);
+        }
+        return shown;
+    }
+
+    /**
+     * Whether the device has the setting the way the profile wants it, right now
+     */
+    private boolean matches(Setting setting, SettingsManager.Profile profile) {
+        switch (setting) {
+            case AIRPLANE_MODE:
+                return device.peekSwitch(setting) == profile.getAirplaneMode();
+            case MOBILE_NETWORK:
+                return device.peekSwitch(setting) == profile.getMobileNetwork();
+            case WIFI:
+                return device.peekSwitch(setting) == profile.getWifi();
+            case BLUETOOTH:
+                return device.peekSwitch(setting) == profile.getBluetooth();
+            case SOUND_VOLUME:
+                return device.peekVolume(setting) == profile.getSoundVolume();
+            case EARPIECE_VOLUME:
+                return device.peekVolume(setting) == profile.getEarpieceVolume();
+            default:
+                throw new IllegalArgumentException("Unknown setting " + setting);
+        }
+    }
+
+    private Intent nextChecklist() {
+        Intent intent;
+        while ((intent = shadowOf(activity).getNextStartedActivity()) != null) {
+            if (intent.getComponent() != null &&
+                    GuidedChecklistActivity.class.getName().equals(intent.getComponent().getClassName())) {
+                return intent;
+            }
+        }
+        return null;
+    }
+
+    private void drainStartedActivities() {
+        while (shadowOf(activity).getNextStartedActivity() != null) {
+            // GuidedReturn may have brought MainActivity forward
+        }
+    }
+
+    /**
+     * Run the main looper until the condition holds; the fix flow does its work on real
+     * background threads, which post their results back to it
+     */
+    private static void runUntil(String what, BooleanSupplier condition, long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            shadowOf(Looper.getMainLooper()).idle();
+            if (condition.getAsBoolean()) {
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for " + what);
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Interrupted waiting for " + what);
+            }
+        }
+    }
+
+    enum Outcome {
+        ALREADY_CORRECT(R.string.all_settings_already_correct),
+        FIXED(R.string.settings_fixed),
+        PARTIALLY_FIXED(R.string.settings_partially_fixed),
+        NOT_FIXED(R.string.settings_not_fixed);
+
+        final int message;
+
+        Outcome(int message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * One randomly drawn situation: the profile, the device state and how the device and the user behave
+     */
+    private static final class Scenario {
+        final boolean[] profileSwitches = new boolean[4];
+        final boolean[] deviceSwitches = new boolean[4];
+        final int[] profileVolumes = new int[2];
+        final int[] deviceVolumes = new int[2];
+        final FakeDeviceController.Behavior[] behaviors = new FakeDeviceController.Behavior[Setting.values().length];
+        final long[] delaysMs = new long[Setting.values().length];
+        final boolean[] userFixes = new boolean[Setting.values().length];
+        boolean mobileDataDirect;
+        boolean wifiDirect;
+
+        // Switches in Setting order: airplane mode, mobile network, WiFi, Bluetooth
+        private static final List<Setting> SWITCHES = Arrays.asList(
+                Setting.AIRPLANE_MODE, Setting.MOBILE_NETWORK, Setting.WIFI, Setting.BLUETOOTH);
+
+        static Scenario random(Random random) {
+            Scenario scenario = new Scenario();
+            for (int i = 0; i < SWITCHES.size(); i++) {
+                scenario.profileSwitches[i] = random.nextBoolean();
+                scenario.deviceSwitches[i] = random.nextDouble() < DRIFT_RATE ?
+                        !scenario.profileSwitches[i] : scenario.profileSwitches[i];
+            }
+            // Whether mobile data matters while airplane mode is on, or about to be, is a product
+            // decision, not something the device shows; those scenarios leave mobile data alone
+            if (scenario.profileSwitches[0] || scenario.deviceSwitches[0]) {
+                scenario.deviceSwitches[1] = scenario.profileSwitches[1];
+            }
+            for (int i = 0; i < 2; i++) {
+                scenario.profileVolumes[i] = VOLUMES[random.nextInt(VOLUMES.length)];
+                scenario.deviceVolumes[i] = random.nextDouble() < DRIFT_RATE ?
+                        VOLUMES[random.nextInt(VOLUMES.length)] : scenario.profileVolumes[i];
+            }
+            for (Setting setting : Setting.values()) {
+                double draw = random.nextDouble();
+                boolean isVolume = setting == Setting.SOUND_VOLUME || setting == Setting.EARPIECE_VOLUME;
+                if (draw < REFUSE_RATE) {
+                    scenario.behaviors[setting.ordinal()] = FakeDeviceController.Behavior.REFUSE;
+                } else if (!isVolume && draw < REFUSE_RATE + LOSE_RATE) {
+                    scenario.behaviors[setting.ordinal()] = FakeDeviceController.Behavior.LOSE;
+                } else {
+                    scenario.behaviors[setting.ordinal()] = FakeDeviceController.Behavior.DELAY;
+                    scenario.delaysMs[setting.ordinal()] = random.nextInt((int) MAX_CHANGE_DELAY_MS + 1);
+                }
+                scenario.userFixes[setting.ordinal()] = random.nextDouble() < USER_FIXES_RATE;
+            }
+            scenario.mobileDataDirect = random.nextBoolean();
+            scenario.wifiDirect = random.nextBoolean();
+            return scenario;
+        }
+
+        SettingsManager.Profile profile() {
+            return new SettingsManager.Profile.Builder()
+                    .setAirplaneMode(profileSwitches[0])
+                    .setMobileNetwork(profileSwitches[1])
+                    .setWifi(profileSwitches[2])
+                    .setBluetooth(profileSwitches[3])
+                    .setSoundVolume(profileVolumes[0])
+                    .setEarpieceVolume(profileVolumes[1])
+                    .build();
+        }
+
+        void prepare(FakeDeviceController device) {
+            device.reset(deviceSwitches[0], deviceSwitches[1], deviceSwitches[2], deviceSwitches[3],
+                    deviceVolumes[0], deviceVolumes[1]);
+            device.setDirectAccess(mobileDataDirect, wifiDirect);
+            for (Setting setting : Setting.values()) {
+                device.setBehavior(setting, behaviors[setting.ordinal()], delaysMs[setting.ordinal()]);
+            }
+        }
+
+        /**
+         * The user goes through the checklist they were shown and fixes the rows they manage to
+         */
+        void actAsUser(FakeDeviceController device, List<Setting> checklist) {
+            for (Setting setting : checklist) {
+                if (userFixes[setting.ordinal()]) {
+                    device.setByUser(setting, profileSwitches[SWITCHES.indexOf(setting)]);
+                }
+            }
+        }
+
+        boolean drifted(Setting setting) {
+            switch (setting) {
+                case SOUND_VOLUME:
+                    return deviceVolumes[0] != profileVolumes[0];
+                case EARPIECE_VOLUME:
+                    return deviceVolumes[1] != profileVolumes[1];
+                default:
+                    int index = SWITCHES.indexOf(setting);
+                    return deviceSwitches[index] != profileSwitches[index];
+            }
+        }
+
+        /**
+         * Whether the phone lets an app change the setting at all; no app may switch airplane mode
+         */
+        boolean deviceAllowsDirect(Setting setting) {
+            switch (setting) {
+                case AIRPLANE_MODE:
+                    return false;
+                case MOBILE_NETWORK:
+                    return mobileDataDirect;
+                case WIFI:
+                    return wifiDirect;
+                default:
+                    return true;
+            }
+        }
+
+        /**
+         * Whether a change made by the app would take effect on this device
+         */
+        boolean landsDirectly(Setting setting) {
+            return deviceAllowsDirect(setting) && behaviors[setting.ordinal()] == FakeDeviceController.Behavior.DELAY;
+        }
+
+        @Override
+        public String toString() {
+            return "{profile=" + Arrays.toString(profileSwitches) + Arrays.toString(profileVolumes) +
+                    ", device=" + Arrays.toString(deviceSwitches) + Arrays.toString(deviceVolumes) +
+                    ", direct=" + mobileDataDirect + "/" + wifiDirect +
+                    ", behaviors=" + Arrays.toString(behaviors) +
+                    ", userFixes=" + Arrays.toString(userFixes) + "}";
+        }
+    }
+
+    /**
+     * Collected durations, reported as percentiles in milliseconds
+     */
+    private static final class Latencies {
+        private final List<Long> nanos = new ArrayList<>();
+
+        void add(long durationNanos) {
+            nanos.add(durationNanos);
+        }
+
+        private double percentile(List<Long> sorted, double fraction) {
+            int index = (int) Math.ceil(fraction * sorted.size()) - 1;
+            return sorted.get(Math.max(0, index)) / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            if (nanos.isEmpty()) {
+                return "no samples";
+            }
+            List<Long> sorted = new ArrayList<>(nanos);
+            sorted.sort(null);
+            return String.format(Locale.ROOT, "n=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+                    sorted.size(), percentile(sorted, 0.5), percentile(sorted, 0.9),
+                    percentile(sorted, 0.99), percentile(sorted, 1.0));
+        }
+    }
+}
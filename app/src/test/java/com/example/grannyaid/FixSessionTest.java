@@ -0,0 +1,121 @@
+package com.example.grannyaid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * The packed per-setting flags of a fix run and how they survive a restart
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class FixSessionTest {
+
+    private static final long PROFILE_VERSION = 7;
+
+    private Context context;
+    private FixSession session;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        session = FixSession.restore(context, PROFILE_VERSION);
+        session.start(PROFILE_VERSION);
+    }
+
+    @Test
+    public void newSessionIsActiveAndEmpty() {
+        assertTrue(session.isActive());
+        assertFalse(session.isDiagnosed());
+        assertFalse(session.anySuccessful());
+        for (Setting setting : Setting.values()) {
+            assertFalse(session.needsFix(setting));
+            assertFalse(session.wasAttempted(setting));
+            assertFalse(session.isSuccessful(setting));
+        }
+    }
+
+    @Test
+    public void eachFlagOnlyAffectsItsOwnSetting() {
+        for (Setting changed : Setting.values()) {
+            session.start(PROFILE_VERSION);
+            session.setNeedsFix(changed, true);
+            session.markAttempted(changed);
+            session.setSuccessful(changed, true);
+            for (Setting other : Setting.values()) {
+                boolean same = other == changed;
+                assertEquals(changed + "/" + other, same, session.needsFix(other));
+                assertEquals(changed + "/" + other, same, session.wasAttempted(other));
+                assertEquals(changed + "/" + other, same, session.isSuccessful(other));
+            }
+            // The highest setting bits sit right below the session flags
+            assertTrue(session.isActive());
+            assertFalse(session.isDiagnosed());
+        }
+    }
+
+    @Test
+    public void flagsCanBeCleared() {
+        session.setNeedsFix(Setting.WIFI, true);
+        session.setSuccessful(Setting.WIFI, true);
+        session.setSuccessful(Setting.WIFI, false);
+        session.setNeedsFix(Setting.WIFI, false);
+
+        assertFalse(session.needsFix(Setting.WIFI));
+        assertFalse(session.isSuccessful(Setting.WIFI));
+        assertFalse(session.anySuccessful());
+    }
+
+    @Test
+    public void restoredSessionContinuesWhereItStopped() {
+        session.setNeedsFix(Setting.MOBILE_NETWORK, true);
+        session.markAttempted(Setting.MOBILE_NETWORK);
+        session.setSuccessful(Setting.EARPIECE_VOLUME, true);
+        session.markDiagnosed();
+        session.markSettled(Setting.MOBILE_NETWORK, session.getStartedAt() + 1_500);
+
+        FixSession restored = FixSession.restore(context, PROFILE_VERSION);
+
+        assertTrue(restored.isActive());
+        assertTrue(restored.isDiagnosed());
+        assertTrue(restored.needsFix(Setting.MOBILE_NETWORK));
+        assertTrue(restored.wasAttempted(Setting.MOBILE_NETWORK));
+        assertFalse(restored.isSuccessful(Setting.MOBILE_NETWORK));
+        assertTrue(restored.isSuccessful(Setting.EARPIECE_VOLUME));
+        assertEquals(session.getStartedAt(), restored.getStartedAt());
+        assertEquals(1_500, restored.getDurationMs(Setting.MOBILE_NETWORK, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void sessionForAnotherProfileVersionIsDropped() {
+        session.setNeedsFix(Setting.WIFI, true);
+
+        FixSession restored = FixSession.restore(context, PROFILE_VERSION + 1);
+
+        assertFalse(restored.isActive());
+        assertFalse(restored.needsFix(Setting.WIFI));
+    }
+
+    @Test
+    public void unsettledSettingCountsUntilNow() {
+        long startedAt = session.getStartedAt();
+        session.markSettled(Setting.BLUETOOTH, startedAt + 200);
+
+        assertEquals(200, session.getDurationMs(Setting.BLUETOOTH, startedAt + 9_000));
+        assertEquals(9_000, session.getDurationMs(Setting.WIFI, startedAt + 9_000));
+
+        // A new run forgets when the previous one settled its settings
+        session.start(PROFILE_VERSION);
+        long now = session.getStartedAt() + 50;
+        assertEquals(50, session.getDurationMs(Setting.BLUETOOTH, now));
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.grannyaid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.os.Bundle;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Parsing and validation of profile files and managed configurations
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class ProfileImporterTest {
+
+    @Test
+    public void parsesEveryField() {
+        ProfileImporter.Batch batch = ProfileImporter.parseJson("{\"active\": \"home\", \"profiles\": {" +
+                "\"home\": {\"airplaneMode\": true, \"bluetooth\": false, \"wifi\": false, \"mobileNetwork\": false," +
+                " \"soundVolume\": 0, \"earpieceVolume\": 100, \"autoFix\": true}}}");
+
+        assertEquals("home", batch.activeName);
+        SettingsManager.Profile home = batch.profiles.get("home");
+        assertTrue(home.getAirplaneMode());
+        assertFalse(home.getBluetooth());
+        assertFalse(home.getWifi());
+        assertFalse(home.getMobileNetwork());
+        assertEquals(0, home.getSoundVolume());
+        assertEquals(100, home.getEarpieceVolume());
+        assertTrue(home.getAutoFix());
+    }
+
+    @Test
+    public void missingFieldsTakeTheDefaultsAndOrderIsKept() {
+        ProfileImporter.Batch batch = ProfileImporter.parseJson(
+                "{\"profiles\": {\"night\": {\"soundVolume\": 30}, \"home\": {}, \"travel\": {\"wifi\": false}}}");
+
+        assertNull(batch.activeName);
+        assertEquals(Arrays.asList("night", "home", "travel"), new ArrayList<>(batch.profiles.keySet()));
+        assertTrue(batch.profiles.get("home").hasSameValues(new SettingsManager.Profile.Builder().build()));
+        assertTrue(batch.profiles.get("night").hasSameValues(
+                new SettingsManager.Profile.Builder().setSoundVolume(30).build()));
+    }
+
+    @Test
+    public void invalidFilesAreRejected() {
+        assertRejected("not json");
+        assertRejected("{}");
+        assertRejected("{\"profiles\": {}}");
+        assertRejected("{\"profiles\": {\"home\": {}}, \"version\": 2}");
+        assertRejected("{\"profiles\": {\"home\": {\"wiFi\": true}}}");
+        assertRejected("{\"profiles\": {\"home\": []}}");
+        assertRejected("{\"profiles\": {\"Home\": {}}}");
+        assertRejected("{\"profiles\": {\"home\": {}}, \"active\": 1}");
+        assertRejected("{\"profiles\": {\"home\": {}}, \"active\": \"no spaces\"}");
+        assertRejected("{\"profiles\": {\"home\": {\"wifi\": \"yes\"}}}");
+        assertRejected("{\"profiles\": {\"home\": {\"soundVolume\": 101}}}");
+        assertRejected("{\"profiles\": {\"home\": {\"soundVolume\": -1}}}");
+        assertRejected("{\"profiles\": {\"home\": {\"soundVolume\": 50.5}}}");
+    }
+
+    @Test
+    public void emptyConfigurationIsIgnored() {
+        assertNull(ProfileImporter.fromRestrictions(new Bundle()));
+    }
+
+    @Test
+    public void singleProfileKeysMakeTheActiveProfile() {
+        Bundle restrictions = new Bundle();
+        restrictions.putString(ProfileImporter.RESTRICTION_PROFILE_NAME, "travel");
+        restrictions.putBoolean(ProfileImporter.RESTRICTION_WIFI, false);
+        restrictions.putInt(ProfileImporter.RESTRICTION_SOUND_VOLUME, 30);
+
+        ProfileImporter.Batch batch = ProfileImporter.fromRestrictions(restrictions);
+
+        assertEquals("travel", batch.activeName);
+        assertEquals(1, batch.size());
+        assertTrue(batch.profiles.get("travel").hasSameValues(
+                new SettingsManager.Profile.Builder().setWifi(false).setSoundVolume(30).build()));
+    }
+
+    @Test
+    public void singleProfileDefaultsToHome() {
+        Bundle restrictions = new Bundle();
+        restrictions.putBoolean(ProfileImporter.RESTRICTION_AUTO_FIX, true);
+
+        ProfileImporter.Batch batch = ProfileImporter.fromRestrictions(restrictions);
+
+        assertEquals(SettingsManager.PROFILE_HOME, batch.activeName);
+        assertTrue(batch.profiles.get(SettingsManager.PROFILE_HOME).getAutoFix());
+    }
+
+    @Test
+    public void profilesJsonWinsOverSingleKeys() {
+        Bundle restrictions = new Bundle();
+        restrictions.putString(ProfileImporter.RESTRICTION_PROFILES_JSON, "{\"profiles\": {\"night\": {}}}");
+        restrictions.putBoolean(ProfileImporter.RESTRICTION_WIFI, false);
+
+        ProfileImporter.Batch batch = ProfileImporter.fromRestrictions(restrictions);
+
+        assertEquals(Arrays.asList("night"), new ArrayList<>(batch.profiles.keySet()));
+    }
+
+    @Test
+    public void volumeOutOfRangeInConfigurationIsRejected() {
+        Bundle restrictions = new Bundle();
+        restrictions.putInt(ProfileImporter.RESTRICTION_EARPIECE_VOLUME, 150);
+        try {
+            ProfileImporter.fromRestrictions(restrictions);
+            fail("Accepted earpiece volume 150");
+        } catch (IllegalArgumentException expected) {
+            // Reported to the EMM instead of being clamped
+        }
+    }
+
+    private static void assertRejected(String json) {
+        try {
+            ProfileImporter.parseJson(json);
+            fail("Accepted " + json);
+        } catch (IllegalArgumentException expected) {
+            // Nothing is stored from an invalid file
+        }
+    }
+}
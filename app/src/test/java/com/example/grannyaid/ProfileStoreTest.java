@@ -0,0 +1,127 @@
+package com.example.grannyaid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Profiles written by one store read back the same in a fresh one, as after a restart
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class ProfileStoreTest {
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+    }
+
+    @Test
+    public void profilesSurviveARestart() throws Exception {
+        ProfileStore store = new ProfileStore(context);
+        SettingsManager.Profile home = store.put(SettingsManager.PROFILE_HOME, new SettingsManager.Profile.Builder()
+                .setAirplaneMode(true)
+                .setBluetooth(false)
+                .setWifi(false)
+                .setMobileNetwork(true)
+                .setSoundVolume(0)
+                .setEarpieceVolume(100)
+                .setAutoFix(true)
+                .build(), true);
+        SettingsManager.Profile night = store.put("night", new SettingsManager.Profile.Builder()
+                .setSoundVolume(30)
+                .build(), false);
+        assertTrue(store.setActive("night"));
+        store.awaitWrites();
+
+        ProfileStore restarted = new ProfileStore(context);
+
+        assertEquals(Arrays.asList(SettingsManager.PROFILE_HOME, "night"), restarted.getNames());
+        assertEquals("night", restarted.getActiveName());
+        assertSame(home, restarted.getProfile(SettingsManager.PROFILE_HOME));
+        assertSame(night, restarted.getProfile("night"));
+        assertNull(restarted.getProfile("travel"));
+    }
+
+    @Test
+    public void versionsKeepIncreasingAfterARestart() throws Exception {
+        ProfileStore store = new ProfileStore(context);
+        long first = store.put("night", new SettingsManager.Profile.Builder().build(), false).getVersion();
+        store.awaitWrites();
+
+        long next = new ProfileStore(context).put("travel", new SettingsManager.Profile.Builder().build(), false)
+                .getVersion();
+
+        assertTrue(next > first);
+    }
+
+    @Test
+    public void importingTheSameProfilesAgainChangesNothing() throws Exception {
+        Map<String, SettingsManager.Profile> imported = new LinkedHashMap<>();
+        imported.put("night", new SettingsManager.Profile.Builder().setSoundVolume(30).build());
+        imported.put("travel", new SettingsManager.Profile.Builder().setWifi(false).build());
+        ProfileStore store = new ProfileStore(context);
+
+        assertEquals(2, store.putAll(imported, "travel"));
+        long version = store.getProfile("night").getVersion();
+        assertEquals(0, store.putAll(imported, "travel"));
+        assertEquals(version, store.getProfile("night").getVersion());
+        store.awaitWrites();
+
+        assertEquals("travel", new ProfileStore(context).getActiveName());
+    }
+
+    @Test
+    public void legacyProfileIsMigratedIntoHome() {
+        context.getSharedPreferences("GrannyAidPrefs", Context.MODE_PRIVATE).edit()
+                .putBoolean("wifi", false)
+                .putInt("sound_volume", 40)
+                .putLong("profile_version", 12)
+                .commit();
+
+        ProfileStore store = new ProfileStore(context);
+        SettingsManager.Profile home = store.getActiveProfile();
+
+        assertEquals(SettingsManager.PROFILE_HOME, store.getActiveName());
+        assertFalse(home.getWifi());
+        assertEquals(40, home.getSoundVolume());
+        assertEquals(12, home.getVersion());
+        assertFalse(context.getSharedPreferences("GrannyAidPrefs", Context.MODE_PRIVATE).contains("wifi"));
+    }
+
+    @Test
+    public void damagedFileStartsOverWithTheDefaults() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(new File(context.getFilesDir(), "profiles.bin"))) {
+            out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        }
+
+        ProfileStore store = new ProfileStore(context);
+
+        assertEquals(Arrays.asList(SettingsManager.PROFILE_HOME), store.getNames());
+        assertTrue(store.getActiveProfile().hasSameValues(new SettingsManager.Profile.Builder().build()));
+    }
+
+    private static void assertSame(SettingsManager.Profile expected, SettingsManager.Profile actual) {
+        assertTrue("expected " + expected + ", was " + actual, expected.hasSameValues(actual));
+        assertEquals(expected.getVersion(), actual.getVersion());
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.grannyaid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.media.AudioManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+/**
+ * Percent to stream index conversion and the writes it leads to
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class VolumeEngineTest {
+
+    // Table order of VolumeEngine: music, ring, notification, alarm, voice call
+    private static final int[] STREAMS = {AudioManager.STREAM_MUSIC, AudioManager.STREAM_RING,
+            AudioManager.STREAM_NOTIFICATION, AudioManager.STREAM_ALARM, AudioManager.STREAM_VOICE_CALL};
+
+    private AudioManager audioManager;
+    private VolumeEngine engine;
+
+    @Before
+    public void setUp() {
+        audioManager = (AudioManager) RuntimeEnvironment.getApplication().getSystemService(Context.AUDIO_SERVICE);
+        shadowOf(audioManager).setStreamMaxVolume(15);
+        for (int stream : STREAMS) {
+            audioManager.setStreamVolume(stream, 15, 0);
+        }
+        engine = new VolumeEngine(audioManager);
+    }
+
+    @Test
+    public void percentIsRoundedToTheNearestStep() {
+        int[][] expected = {{0, 0}, {3, 0}, {4, 1}, {50, 8}, {70, 11}, {97, 15}, {100, 15}};
+        for (int[] percentAndIndex : expected) {
+            engine.apply(Setting.EARPIECE_VOLUME, percentAndIndex[0]);
+            assertEquals(percentAndIndex[0] + "%", percentAndIndex[1],
+                    audioManager.getStreamVolume(AudioManager.STREAM_VOICE_CALL));
+            assertTrue(engine.matches(Setting.EARPIECE_VOLUME, percentAndIndex[0], engine.readIndices()));
+        }
+    }
+
+    @Test
+    public void onlyStreamsThatDifferAreWritten() {
+        audioManager.setStreamVolume(AudioManager.STREAM_ALARM, 3, 0);
+
+        assertFalse(engine.matches(Setting.SOUND_VOLUME, 100, engine.readIndices()));
+        assertEquals(1, engine.apply(Setting.SOUND_VOLUME, 100));
+        assertEquals(0, engine.apply(Setting.SOUND_VOLUME, 100));
+        assertTrue(engine.matches(Setting.SOUND_VOLUME, 100, engine.readIndices()));
+    }
+
+    @Test
+    public void settingOnlyMovesItsOwnStreams() {
+        assertEquals(4, engine.apply(Setting.SOUND_VOLUME, 40));
+
+        assertArrayEquals(new int[]{6, 6, 6, 6, 15}, engine.readIndices());
+        assertTrue(engine.matches(Setting.EARPIECE_VOLUME, 100, engine.readIndices()));
+    }
+
+    @Test
+    public void zeroLeavesRingAndNotificationAudible() {
+        assertEquals(2, engine.apply(Setting.SOUND_VOLUME, 0));
+
+        assertArrayEquals(new int[]{0, 15, 15, 0, 15}, engine.readIndices());
+        assertTrue(engine.matches(Setting.SOUND_VOLUME, 0, engine.readIndices()));
+    }
+
+    @Test
+    public void smallPercentKeepsRingAndNotificationOneStepAboveZero() {
+        // 5% of 7 steps rounds down to 0
+        shadowOf(audioManager).setStreamMaxVolume(7);
+
+        assertEquals(4, engine.apply(Setting.SOUND_VOLUME, 5));
+
+        assertArrayEquals(new int[]{0, 1, 1, 0}, Arrays.copyOf(engine.readIndices(), 4));
+        assertTrue(engine.matches(Setting.SOUND_VOLUME, 5, engine.readIndices()));
+        assertEquals(0, engine.apply(Setting.SOUND_VOLUME, 5));
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.grannyaid.macrobenchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import kotlin.Unit;
+
+/**
+ * Records the classes and methods used while launching MainActivity and running a fix.
+ * Needs Android 13+ or a rooted device. Copy the generated
+ * BaselineProfileGenerator_generate-baseline-prof.txt from the test output
+ * to app/src/main/baseline-prof.txt.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+    @Rule
+    public BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void generate() {
+        baselineProfileRule.collect(BenchmarkTargets.PACKAGE_NAME, scope -> {
+            BenchmarkTargets.grantPermissions(scope);
+            scope.pressHome();
+            BenchmarkTargets.startWithFakeState(scope);
+            BenchmarkTargets.tapFixAndWait(scope);
+            return Unit.INSTANCE;
+        });
+    }
+}
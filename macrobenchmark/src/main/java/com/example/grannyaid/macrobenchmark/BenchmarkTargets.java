@@ -0,0 +1,78 @@
+package com.example.grannyaid.macrobenchmark;
+
+import android.os.Build;
+import android.util.Log;
+
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.BySelector;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+import java.io.IOException;
+
+import kotlin.Unit;
+
+/**
+ * What the benchmarks measure and how the device is prepared for it
+ */
+final class BenchmarkTargets {
+    private static final String TAG = "BenchmarkTargets";
+
+    static final String PACKAGE_NAME = "com.example.grannyaid";
+
+    // Mirrors MainActivity.TRACE_FIX and MainActivity.EXTRA_FAKE_STATE
+    static final String TRACE_FIX = "GrannyAid.fix";
+    static final String EXTRA_FAKE_STATE = "com.example.grannyaid.extra.FAKE_STATE";
+
+    static final int ITERATIONS = 10;
+
+    private static final long TIMEOUT_MS = 5000;
+    private static final long BUSY_TIMEOUT_MS = 1000;
+
+    private BenchmarkTargets() {
+    }
+
+    /**
+     * Grant everything MainActivity asks for, so no permission dialog covers the screen
+     */
+    static void grantPermissions(MacrobenchmarkScope scope) {
+        try {
+            scope.getDevice().executeShellCommand("appops set " + PACKAGE_NAME + " WRITE_SETTINGS allow");
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                scope.getDevice().executeShellCommand(
+                        "pm grant " + PACKAGE_NAME + " android.permission.BLUETOOTH_CONNECT");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to grant permissions: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Start MainActivity with the fake device state, so a fix never leaves for the Settings app
+     */
+    static void startWithFakeState(MacrobenchmarkScope scope) {
+        scope.startActivityAndWait(intent -> {
+            intent.putExtra(EXTRA_FAKE_STATE, true);
+            return Unit.INSTANCE;
+        });
+    }
+
+    /**
+     * Tap FIX IT and wait until the fix has finished
+     */
+    static void tapFixAndWait(MacrobenchmarkScope scope) {
+        UiDevice device = scope.getDevice();
+        UiObject2 fixButton = device.wait(Until.findObject(fixButton(true)), TIMEOUT_MS);
+        fixButton.click();
+        // The button is disabled while the fix runs. Metrics come from traces,
+        // so waiting a little longer than needed here doesn't change the results.
+        device.wait(Until.hasObject(fixButton(false)), BUSY_TIMEOUT_MS);
+        device.wait(Until.hasObject(fixButton(true)), TIMEOUT_MS);
+    }
+
+    private static BySelector fixButton(boolean enabled) {
+        return By.res(PACKAGE_NAME, "fixButton").enabled(enabled);
+    }
+}
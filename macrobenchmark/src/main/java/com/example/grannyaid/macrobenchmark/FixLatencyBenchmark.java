@@ -0,0 +1,49 @@
+package com.example.grannyaid.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.TraceSectionMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import kotlin.Unit;
+
+/**
+ * Time from the FIX IT tap until MainActivity reports the result, taken from the
+ * GrannyAid.fix trace section that spans fixSettings() to finishSettingsProcess().
+ *
+ * The app is started with a fake device state in which every connectivity setting already
+ * matches the profile, so no Settings screen or dialog interrupts the run and every iteration
+ * takes the same path: diagnosis, the automatic batch and the final result.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FixLatencyBenchmark {
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void tapToFixed() {
+        benchmarkRule.measureRepeated(
+                BenchmarkTargets.PACKAGE_NAME,
+                Collections.singletonList(new TraceSectionMetric(BenchmarkTargets.TRACE_FIX)),
+                CompilationMode.DEFAULT,
+                null,
+                BenchmarkTargets.ITERATIONS,
+                scope -> {
+                    BenchmarkTargets.grantPermissions(scope);
+                    // A fresh process every time, so no fix session is left over from the last iteration
+                    scope.killProcess();
+                    BenchmarkTargets.startWithFakeState(scope);
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    BenchmarkTargets.tapFixAndWait(scope);
+                    return Unit.INSTANCE;
+                });
+    }
+}
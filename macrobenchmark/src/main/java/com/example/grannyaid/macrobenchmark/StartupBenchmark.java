@@ -0,0 +1,63 @@
+package com.example.grannyaid.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import kotlin.Unit;
+
+/**
+ * Time to first frame of MainActivity, from a killed process (cold) and from a
+ * running process whose activity was destroyed (warm).
+ * The cold start without any AOT compilation shows what the Baseline Profile saves.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void startupCold() {
+        startup(StartupMode.COLD);
+    }
+
+    @Test
+    public void startupColdWithoutProfile() {
+        startup(StartupMode.COLD, new CompilationMode.None());
+    }
+
+    @Test
+    public void startupWarm() {
+        startup(StartupMode.WARM);
+    }
+
+    private void startup(StartupMode startupMode) {
+        startup(startupMode, CompilationMode.DEFAULT);
+    }
+
+    private void startup(StartupMode startupMode, CompilationMode compilationMode) {
+        benchmarkRule.measureRepeated(
+                BenchmarkTargets.PACKAGE_NAME,
+                Collections.singletonList(new StartupTimingMetric()),
+                compilationMode,
+                startupMode,
+                BenchmarkTargets.ITERATIONS,
+                scope -> {
+                    BenchmarkTargets.grantPermissions(scope);
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    scope.startActivityAndWait();
+                    return Unit.INSTANCE;
+                });
+    }
+}